@@ -0,0 +1,86 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes assets off the main thread on a small pool, so the engine can draw a placeholder while
+ * they load. Work is queued in the order it is submitted, so the assets needed first should be
+ * submitted first.
+ *
+ * <p>Each batch of work belongs to a generation; starting a new generation (for instance on a
+ * surface change) means results of older batches are handed to their discard action instead of
+ * being installed.
+ */
+public class AssetLoader {
+
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int generation;
+
+    public AssetLoader(int threads) {
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Below the UI thread, which is drawing the placeholder meanwhile.
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AssetLoader-" + count.incrementAndGet());
+            }
+        });
+    }
+
+    /** Starts a new generation, abandoning the results of earlier ones. Main thread only. */
+    public int nextGeneration() {
+        return ++generation;
+    }
+
+    /**
+     * Runs every task on the pool, in parallel where there are threads to spare, and once all of
+     * them have finished runs {@code done} on the main thread, or {@code discard} if
+     * {@code batchGeneration} is no longer current by then. Main thread only.
+     */
+    public void runAll(final int batchGeneration, Runnable[] tasks, final Runnable done,
+            final Runnable discard) {
+        final AtomicInteger remaining = new AtomicInteger(tasks.length);
+        final Runnable finish = new Runnable() {
+            @Override
+            public void run() {
+                if (batchGeneration == generation) {
+                    done.run();
+                } else if (discard != null) {
+                    discard.run();
+                }
+            }
+        };
+        for (final Runnable task : tasks) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    task.run();
+                    if (remaining.decrementAndGet() == 0) {
+                        mainHandler.post(finish);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Stops the pool; batches still running are dropped. */
+    public void shutdown() {
+        generation++;
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,240 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pressure log growing while no watch face engine is alive, for instance while another
+ * face is shown, so the trend arc is complete as soon as this face comes back.
+ *
+ * <p>An inexact repeating alarm lets the system fold our wake-ups into others. Each alarm takes
+ * one burst of readings at the fastest rate, reduced by {@link pressureReader#startBurst} to one
+ * outlier-free value, since the first reading after the sensor wakes is often off. It appends
+ * it to the {@link PressureLog} and lets the device sleep again. No more than
+ * {@link #WAKEUPS_PER_HOUR} alarms an hour are acted on, however the system delivers them. The
+ * engine cancels the alarm while it runs, since its own {@link PressurePipeline} is sampling and
+ * owns the log. Alarms don't survive a reboot, so the receiver also takes BOOT_COMPLETED and sets
+ * the alarm again if it was set before.
+ */
+public class BackgroundPressureSampler extends BroadcastReceiver {
+
+    /** Sensor wake-ups allowed per hour, here and in {@link PressurePipeline}. */
+    public static final int WAKEUPS_PER_HOUR = 4;
+
+    private static final long INTERVAL_MS = TimeUnit.HOURS.toMillis(1) / WAKEUPS_PER_HOUR;
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    /* Give up on a reading after this long rather than hold the device awake. */
+    private static final long READ_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    /* Readings per burst, and the longest a burst may take once the first has arrived. */
+    private static final int BURST_SIZE = 8;
+    private static final long BURST_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final String PREFS = "pressure_sampler";
+    private static final String KEY_WINDOW_START = "window_start";
+    private static final String KEY_WINDOW_WAKEUPS = "window_wakeups";
+    private static final String KEY_SCHEDULED = "scheduled";
+
+    /*
+     * Set while an engine is sampling; background readings then leave the log alone. Changed and
+     * checked under sLogLock around each append, so once cancel() returns no reading is still
+     * writing to the file the engine is about to open.
+     */
+    private static volatile boolean sEngineSampling;
+    private static final Object sLogLock = new Object();
+
+    /* Sensor-on time and samples taken by this process, for the per-sample metric. */
+    private static float sSensorOnMs;
+    private static int sSamples;
+
+    /** Starts background sampling, for when the engine goes away. */
+    public static void schedule(Context context) {
+        sEngineSampling = false;
+        prefs(context).edit().putBoolean(KEY_SCHEDULED, true).apply();
+        alarmManager(context).setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + INTERVAL_MS, INTERVAL_MS, alarmIntent(context));
+    }
+
+    /**
+     * Stops background sampling, for when the engine takes over. Waits for a reading that is
+     * appending to the log, so the engine can open it as soon as this returns.
+     */
+    public static void cancel(Context context) {
+        synchronized (sLogLock) {
+            sEngineSampling = true;
+        }
+        alarmManager(context).cancel(alarmIntent(context));
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static AlarmManager alarmManager(Context context) {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    private static PendingIntent alarmIntent(Context context) {
+        Intent intent = new Intent(context, BackgroundPressureSampler.class);
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            if (shouldRescheduleOnBoot(prefs(context))) {
+                schedule(context);
+            }
+            return;
+        }
+        if (sEngineSampling || !takeWakeup(prefs(context), SystemClock.elapsedRealtime())) {
+            return;
+        }
+        SensorManager sensorManager =
+                (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        if (sensor == null) {
+            cancel(context);
+            sEngineSampling = false;
+            return;
+        }
+        // The broadcast holds the device awake until the result is finished.
+        new Reading(context.getApplicationContext(), sensorManager, sensor, goAsync()).start();
+    }
+
+    /*
+     * Counts a wake-up at elapsed realtime {@code now} against the hourly budget kept in
+     * {@code prefs}; false if the budget is spent.
+     */
+    static boolean takeWakeup(SharedPreferences prefs, long now) {
+        long windowStart = prefs.getLong(KEY_WINDOW_START, 0);
+        int wakeups = prefs.getInt(KEY_WINDOW_WAKEUPS, 0);
+        // Elapsed realtime restarts at boot, so a window "in the future" is a stale one.
+        if (!prefs.contains(KEY_WINDOW_START) || now - windowStart >= HOUR_MS
+                || now < windowStart) {
+            windowStart = now;
+            wakeups = 0;
+        }
+        if (wakeups >= WAKEUPS_PER_HOUR) {
+            return false;
+        }
+        prefs.edit()
+                .putLong(KEY_WINDOW_START, windowStart)
+                .putInt(KEY_WINDOW_WAKEUPS, wakeups + 1)
+                .apply();
+        return true;
+    }
+
+    /*
+     * Whether the alarm was set before the reboot and no engine has taken over since; an engine
+     * already running samples for itself and schedules again when it goes.
+     */
+    static boolean shouldRescheduleOnBoot(SharedPreferences prefs) {
+        return !sEngineSampling && prefs.getBoolean(KEY_SCHEDULED, false);
+    }
+
+    private static synchronized void recordSensorOn(float ms) {
+        sSensorOnMs += ms;
+        sSamples++;
+        Log.d("BackgroundPressureSampler", "Sensor on " + ms + " ms, "
+                + getSensorOnMsPerSample() + " ms per sample");
+    }
+
+    /** Average sensor-on milliseconds per background sample taken by this process. */
+    public static synchronized float getSensorOnMsPerSample() {
+        return sSamples == 0 ? 0f : sSensorOnMs / sSamples;
+    }
+
+    /** One reading, taken on its own thread and appended to the log. */
+    private static final class Reading implements pressureReader.Listener, Runnable {
+
+        private final Context context;
+        private final SensorManager sensorManager;
+        private final Sensor sensor;
+        private final PendingResult result;
+        private final pressureReader reader = new pressureReader();
+        private HandlerThread thread;
+        private Handler handler;
+        private boolean done;
+
+        Reading(Context context, SensorManager sensorManager, Sensor sensor,
+                PendingResult result) {
+            this.context = context;
+            this.sensorManager = sensorManager;
+            this.sensor = sensor;
+            this.result = result;
+            reader.setListener(this);
+        }
+
+        void start() {
+            thread = new HandlerThread("BackgroundPressureSampler");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+            handler.postDelayed(this, READ_TIMEOUT_MS);
+            reader.startBurst(BURST_SIZE, BURST_WINDOW_NANOS);
+            sensorManager.registerListener(reader, sensor, SensorManager.SENSOR_DELAY_FASTEST,
+                    handler);
+        }
+
+        @Override
+        public void onPressure(float millibar, long timestampNanos) {
+            if (done) {
+                return;
+            }
+            sensorManager.unregisterListener(reader);
+            append(millibar, PressurePipeline.toWallTime(timestampNanos));
+            recordSensorOn(reader.getSensorOnMsPerSample());
+            finish();
+        }
+
+        /* Timed out without a reading. */
+        @Override
+        public void run() {
+            Log.w("BackgroundPressureSampler", "No pressure reading");
+            finish();
+        }
+
+        private void append(float millibar, long timeMs) {
+            synchronized (sLogLock) {
+                if (sEngineSampling) {
+                    return;
+                }
+                try {
+                    PressureLog log = new PressureLog(
+                            new File(context.getFilesDir(), PressureLog.FILE_NAME),
+                            PressureLog.MAX_RECORDS, timeMs);
+                    try {
+                        log.append(millibar, timeMs);
+                    } finally {
+                        log.close();
+                    }
+                } catch (IOException e) {
+                    Log.w("BackgroundPressureSampler", "Couldn't log pressure", e);
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            sensorManager.unregisterListener(reader);
+            handler.removeCallbacks(this);
+            thread.quitSafely();
+            result.finish();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * Battery level and charging state kept up to date from the sticky ACTION_BATTERY_CHANGED
+ * broadcast, so drawing never has to ask BatteryManager. Register it while the face is visible;
+ * the sticky intent returned on registration fills it in straight away.
+ */
+public class BatteryState extends BroadcastReceiver {
+
+    /** Degrees of battery ring per percent of charge. */
+    private static final float DEGREES_PER_PERCENT = 3.6f;
+
+    public interface Listener {
+        /**
+         * Called on the main thread when the level or charging state changes.
+         *
+         * @param arcChanged whether the battery ring as drawn has changed
+         */
+        void onBatteryChanged(boolean arcChanged);
+    }
+
+    private final Listener listener;
+    private boolean registered;
+
+    private int level = -1;
+    private boolean charging;
+    private float sweep;
+
+    public BatteryState(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void register(Context context) {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        Intent sticky = context.registerReceiver(this,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (sticky != null) {
+            onReceive(context, sticky);
+        }
+    }
+
+    public void unregister(Context context) {
+        if (!registered) {
+            return;
+        }
+        registered = false;
+        context.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int rawLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+        if (rawLevel < 0 || scale <= 0) {
+            return;
+        }
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int newLevel = rawLevel * 100 / scale;
+        boolean newCharging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+        if (newLevel == level && newCharging == charging) {
+            return;
+        }
+        boolean arcChanged = newLevel != level;
+        level = newLevel;
+        charging = newCharging;
+        sweep = DEGREES_PER_PERCENT * newLevel;
+        listener.onBatteryChanged(arcChanged);
+    }
+
+    /** Charge in percent, or -1 before the first broadcast. */
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    /** Sweep of the battery ring in degrees. */
+    public float getSweep() {
+        return sweep;
+    }
+}
@@ -0,0 +1,115 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Decodes resources straight to the size they are drawn at and in the config asked for, and
+ * hands out blank bitmaps, taking allocations from a {@link BitmapPool} wherever one is big
+ * enough. Bitmaps from here should go back through {@link #recycle}.
+ *
+ * <p>Everything returned has no density, so drawing it never rescales it. Thread-safe.
+ */
+public class BitmapDecoder {
+
+    private final Resources resources;
+    private final BitmapPool pool;
+
+    public BitmapDecoder(Resources resources, BitmapPool pool) {
+        this.resources = resources;
+        this.pool = pool;
+    }
+
+    /** Fills in {@code bounds}' outWidth and outHeight for {@code resId} without decoding it. */
+    public void decodeBounds(int resId, BitmapFactory.Options bounds) {
+        bounds.inJustDecodeBounds = true;
+        bounds.inScaled = false;
+        BitmapFactory.decodeResource(resources, resId, bounds);
+    }
+
+    /**
+     * Decodes {@code resId} scaled to {@code width}, its height following the aspect ratio, in
+     * {@code config}. The codec subsamples by a power of two and then scales the rest of the way
+     * by treating the image as having a density of its subsampled width. Only the scaled bitmap
+     * outlives the call, and it takes over a pooled allocation if one is big enough.
+     */
+    public Bitmap decode(int resId, int width, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        decodeBounds(resId, options);
+        options.inSampleSize = sampleSize(options.outWidth, width,
+                "image/jpeg".equals(options.outMimeType));
+        // The subsampled size, which isn't always the full size divided down.
+        BitmapFactory.decodeResource(resources, resId, options);
+        int sampledWidth = options.outWidth;
+        int height = Math.max(1, Math.round(options.outHeight * (float) width / sampledWidth));
+
+        options.inJustDecodeBounds = false;
+        options.inScaled = sampledWidth != width;
+        options.inDensity = sampledWidth;
+        options.inTargetDensity = width;
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+        options.inBitmap = pool.take(byteCount(width, height, config));
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        } catch (IllegalArgumentException e) {
+            // The codec can't decode into that one; fall back to a fresh allocation.
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        }
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    /** A transparent {@code width} x {@code height} bitmap in {@code config}. */
+    public Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = pool.take(byteCount(width, height, config));
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        } else {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(0);
+        }
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    /** Gives {@code bitmap} back for reuse. Null is ignored. */
+    public void recycle(Bitmap bitmap) {
+        pool.put(bitmap);
+    }
+
+    /**
+     * The power-of-two subsample for decoding {@code sourceWidth} pixels to {@code width}. JPEG
+     * subsamples in the DCT, averaging every pixel. Other codecs drop pixels, so those are left
+     * at twice the target or more for the filtered scale to average.
+     */
+    static int sampleSize(int sourceWidth, int width, boolean jpeg) {
+        int keep = jpeg ? 1 : 2;
+        int sample = 1;
+        while (sourceWidth / (sample * 2) >= width * keep) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /** Bytes a {@code width} x {@code height} bitmap in {@code config} needs. */
+    static int byteCount(int width, int height, Bitmap.Config config) {
+        return width * height * bytesPerPixel(config);
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Released bitmaps kept for reuse, so decodes and offscreen buffers can take over an existing
+ * allocation instead of making a new one. Any mutable bitmap with a large enough allocation can
+ * be reused whatever its size and config, which {@link BitmapDecoder} relies on.
+ *
+ * <p>Holds at most {@link #setMaxBytes} bytes, recycling the oldest bitmaps beyond that, and
+ * nothing until a limit is set. Thread-safe.
+ */
+public class BitmapPool {
+
+    private final ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>();
+    private long bytes;
+    private long maxBytes;
+
+    /** Sets the most the pool holds, recycling the oldest bitmaps to get under it. */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /** Hands {@code bitmap} to the pool; the caller must not touch it again. Null is ignored. */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getAllocationByteCount() > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        bitmaps.add(bitmap);
+        bytes += bitmap.getAllocationByteCount();
+        trim();
+    }
+
+    /**
+     * Removes and returns the smallest pooled bitmap with at least {@code minBytes} allocated,
+     * or null if there is none. Its size, config and pixels are whatever they were.
+     */
+    public synchronized Bitmap take(int minBytes) {
+        int best = -1;
+        for (int i = 0; i < bitmaps.size(); i++) {
+            int allocated = bitmaps.get(i).getAllocationByteCount();
+            if (allocated >= minBytes
+                    && (best < 0 || allocated < bitmaps.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.remove(best);
+        bytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /** Recycles everything pooled. */
+    public synchronized void clear() {
+        for (int i = 0; i < bitmaps.size(); i++) {
+            bitmaps.get(i).recycle();
+        }
+        bitmaps.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    private void trim() {
+        while (bytes > maxBytes) {
+            Bitmap oldest = bitmaps.remove(0);
+            bytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+    }
+}
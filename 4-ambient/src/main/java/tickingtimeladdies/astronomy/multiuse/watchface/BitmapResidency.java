@@ -0,0 +1,229 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Decides which of the engine's bitmaps stay in memory. Each set of bitmaps is registered as a
+ * {@link Resident} along with the modes that draw it, and is loaded when one of those modes is
+ * entered and it isn't already resident.
+ *
+ * <p>What happens to a set when its modes are left depends on its kind. {@link #SPRITES} are
+ * released straight away, so only the active hand set is ever held. {@link #DECODED} and
+ * {@link #CACHE} sets are kept while the total stays within the byte budget, so flicking between
+ * ambient and interactive doesn't decode on every wrist raise; over budget, inactive caches go
+ * first and then inactive decoded sets. {@link #onTrimMemory} releases inactive sets regardless
+ * of the budget, and at {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE} everything.
+ *
+ * <p>Main thread only. Residents that other threads draw from must lock around their own
+ * {@link Resident#release}.
+ */
+public class BitmapResidency {
+
+    /** Sprite sets; only the active mode's are kept. */
+    public static final int SPRITES = 0;
+    /** Other bitmaps decoded from resources; kept within budget. */
+    public static final int DECODED = 1;
+    /** Bitmaps rendered by the engine, cheap to rebuild; released first. */
+    public static final int CACHE = 2;
+
+    private static final int RELEASED = 0;
+    private static final int LOADING = 1;
+    private static final int RESIDENT = 2;
+
+    /** One set of bitmaps that can be dropped and loaded again. */
+    public interface Resident {
+        /** Bytes currently held, 0 when released. */
+        long getByteCount();
+
+        /**
+         * Starts loading, synchronously or not. Once loaded, call {@link #commit} with
+         * {@code entry} and {@code ticket} on the main thread, install the bitmaps only if it
+         * returns true, and then call {@link #onInstalled}.
+         */
+        void load(Entry entry, int ticket);
+
+        /** Recycles every bitmap and drops the references. */
+        void release();
+    }
+
+    /** A registered {@link Resident}. */
+    public static final class Entry {
+        private final String name;
+        private final int modes;
+        private final int kind;
+        private final Resident resident;
+        private int state = RELEASED;
+        private int ticket;
+
+        private Entry(String name, int modes, int kind, Resident resident) {
+            this.name = name;
+            this.modes = modes;
+            this.kind = kind;
+            this.resident = resident;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isResident() {
+            return state == RESIDENT;
+        }
+    }
+
+    private final ArrayList<Entry> entries = new ArrayList<Entry>();
+    private long budgetBytes;
+    private int mode;
+    private boolean overBudget;
+    private int releases;
+    private long releasedBytes;
+
+    public BitmapResidency(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Registers {@code resident}, drawn in any of the {@code modes} bits and of the given kind.
+     * It isn't loaded until {@link #setMode} asks for one of its modes.
+     */
+    public Entry register(String name, int modes, int kind, Resident resident) {
+        Entry entry = new Entry(name, modes, kind, resident);
+        entries.add(entry);
+        return entry;
+    }
+
+    public void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        enforceBudget();
+    }
+
+    /**
+     * Makes {@code mode} current: releases sprite sets it doesn't draw and starts loading
+     * whatever it does draw that isn't resident. Cheap when nothing changes, so it can be called
+     * every frame.
+     */
+    public void setMode(int mode) {
+        if (mode != this.mode) {
+            this.mode = mode;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (entry.kind == SPRITES && (entry.modes & mode) == 0) {
+                    release(entry);
+                }
+            }
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.state == RELEASED && (entry.modes & mode) != 0) {
+                entry.state = LOADING;
+                entry.resident.load(entry, ++entry.ticket);
+            }
+        }
+    }
+
+    /**
+     * Records that the load with {@code ticket} has finished.
+     *
+     * @return true if the result should be installed, false if the entry was released while
+     *     it loaded and the result should be recycled
+     */
+    public boolean commit(Entry entry, int ticket) {
+        if (entry.state != LOADING || entry.ticket != ticket) {
+            return false;
+        }
+        entry.state = RESIDENT;
+        return true;
+    }
+
+    /**
+     * Checks the total against the budget after something has been installed, releasing
+     * inactive sets if it is over.
+     */
+    public void onInstalled() {
+        enforceBudget();
+    }
+
+    /** Releases everything, for instance when the surface size changes. */
+    public void releaseAll() {
+        for (int i = 0; i < entries.size(); i++) {
+            release(entries.get(i));
+        }
+    }
+
+    /** Releases according to {@code level}, a ComponentCallbacks2 TRIM_MEMORY_ constant. */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            releaseAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            releaseInactive(CACHE);
+            releaseInactive(DECODED);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            releaseInactive(CACHE);
+        }
+    }
+
+    /** Bytes held by every resident set. */
+    public long getByteCount() {
+        long bytes = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.state == RESIDENT) {
+                bytes += entry.resident.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /** Resident sets released so far, by mode changes, the budget or memory trims. */
+    public int getReleases() {
+        return releases;
+    }
+
+    /** Bytes those sets held when they were released. */
+    public long getReleasedBytes() {
+        return releasedBytes;
+    }
+
+    private void enforceBudget() {
+        if (getByteCount() > budgetBytes) {
+            releaseInactive(CACHE);
+        }
+        if (getByteCount() > budgetBytes) {
+            releaseInactive(DECODED);
+        }
+        long bytes = getByteCount();
+        boolean over = bytes > budgetBytes;
+        if (over && !overBudget) {
+            // The active mode alone doesn't fit; say so once rather than every install.
+            Log.w("BitmapResidency", bytes + " bytes resident, over the budget of "
+                    + budgetBytes);
+        }
+        overBudget = over;
+    }
+
+    private void releaseInactive(int kind) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.kind == kind && (entry.modes & mode) == 0) {
+                release(entry);
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry.state == RELEASED) {
+            return;
+        }
+        if (entry.state == RESIDENT) {
+            releases++;
+            releasedBytes += entry.resident.getByteCount();
+            entry.resident.release();
+        }
+        // A load still in flight now fails its commit.
+        entry.ticket++;
+        entry.state = RELEASED;
+    }
+}
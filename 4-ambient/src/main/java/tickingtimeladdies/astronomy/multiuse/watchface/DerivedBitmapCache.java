@@ -0,0 +1,210 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Bitmaps derived from resources (scaled, grayed, packed) kept on disk as raw pixels, so a warm
+ * start maps them back in instead of decoding and transforming again. Each entry is named by the
+ * caller, normally after the transform and the surface size, and stamped with the asset version
+ * it was made from; an entry from another version, of the wrong size or with a bad checksum is a
+ * miss and is overwritten by the next {@link #store}.
+ *
+ * <p>Layout, big-endian header: magic, format version, asset version (long), width, height,
+ * config ordinal, CRC32 of the pixels; then the pixels exactly as copyPixelsToBuffer writes
+ * them. Entries are written beside themselves and renamed into place, so a reader never sees a
+ * partial one. Thread-safe as long as each name is stored from one thread at a time.
+ */
+public class DerivedBitmapCache {
+
+    private static final int MAGIC = 0x44424331; // "DBC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+
+    private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+    private final File dir;
+    private final long assetVersion;
+    private final BitmapDecoder decoder;
+
+    private volatile int hits;
+    private volatile int misses;
+
+    /**
+     * @param assetVersion changes whenever the resources or the transforms might have; entries
+     *                     stamped with any other value are ignored
+     */
+    public DerivedBitmapCache(File dir, long assetVersion, BitmapDecoder decoder) {
+        this.dir = dir;
+        this.assetVersion = assetVersion;
+        this.decoder = decoder;
+    }
+
+    /** The bitmap stored as {@code name}, in a bitmap from the decoder, or null on a miss. */
+    public Bitmap load(String name) {
+        Bitmap bitmap = null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file(name), "r");
+            MappedByteBuffer map = map(raf);
+            if (map != null) {
+                int config = map.getInt(24);
+                if (config >= 0 && config < CONFIGS.length) {
+                    bitmap = decoder.obtain(map.getInt(16), map.getInt(20), CONFIGS[config]);
+                    if (!copy(map, bitmap)) {
+                        decoder.recycle(bitmap);
+                        bitmap = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Missing or unreadable: a miss.
+        } finally {
+            close(raf);
+        }
+        count(bitmap != null);
+        return bitmap;
+    }
+
+    /**
+     * Fills {@code bitmap} with the pixels stored as {@code name}, if they are the same size and
+     * config.
+     *
+     * @return false on a miss, leaving {@code bitmap} as it was
+     */
+    public boolean loadInto(String name, Bitmap bitmap) {
+        boolean hit = false;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file(name), "r");
+            MappedByteBuffer map = map(raf);
+            hit = map != null && copy(map, bitmap);
+        } catch (IOException e) {
+            // Missing or unreadable: a miss.
+        } finally {
+            close(raf);
+        }
+        count(hit);
+        return hit;
+    }
+
+    /** Stores {@code bitmap}'s pixels as {@code name}. Failures are ignored; it's only a cache. */
+    public void store(String name, Bitmap bitmap) {
+        File file = file(name);
+        File tmp = new File(dir, name + ".tmp");
+        RandomAccessFile raf = null;
+        try {
+            dir.mkdirs();
+            raf = new RandomAccessFile(tmp, "rw");
+            int bytes = bitmap.getByteCount();
+            raf.setLength(HEADER_BYTES + bytes);
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + bytes);
+            map.order(ByteOrder.BIG_ENDIAN);
+            map.position(HEADER_BYTES);
+            bitmap.copyPixelsToBuffer(map);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(8, assetVersion);
+            map.putInt(16, bitmap.getWidth());
+            map.putInt(20, bitmap.getHeight());
+            map.putInt(24, bitmap.getConfig().ordinal());
+            map.putInt(28, checksum(map, bytes));
+            map.force();
+            raf.close();
+            raf = null;
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+        } finally {
+            close(raf);
+        }
+    }
+
+    /** Loads answered from disk since construction. */
+    public int getHits() {
+        return hits;
+    }
+
+    /** Loads that found nothing usable since construction. */
+    public int getMisses() {
+        return misses;
+    }
+
+    private File file(String name) {
+        return new File(dir, name + ".px");
+    }
+
+    /* Maps the whole entry and checks its header, or returns null if it isn't one of ours. */
+    private MappedByteBuffer map(RandomAccessFile raf) throws IOException {
+        FileChannel channel = raf.getChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            return null;
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        map.order(ByteOrder.BIG_ENDIAN);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                || map.getLong(8) != assetVersion) {
+            return null;
+        }
+        return map;
+    }
+
+    /* Copies the mapped pixels into bitmap if they match its size and config and checksum. */
+    private static boolean copy(MappedByteBuffer map, Bitmap bitmap) {
+        int bytes = bitmap.getByteCount();
+        if (map.getInt(16) != bitmap.getWidth() || map.getInt(20) != bitmap.getHeight()
+                || map.getInt(24) != bitmap.getConfig().ordinal()
+                || map.capacity() != HEADER_BYTES + bytes
+                || map.getInt(28) != checksum(map, bytes)) {
+            return false;
+        }
+        map.position(HEADER_BYTES);
+        bitmap.copyPixelsFromBuffer(map);
+        return true;
+    }
+
+    /* CRC32 of the bytes pixels following the header. */
+    private static int checksum(MappedByteBuffer map, int bytes) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[16384];
+        map.position(HEADER_BYTES);
+        int left = bytes;
+        while (left > 0) {
+            int n = Math.min(left, chunk.length);
+            map.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+            left -= n;
+        }
+        return (int) crc.getValue();
+    }
+
+    private void count(boolean hit) {
+        // Racy increments; these only feed a log line.
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    private static void close(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // Nothing was written through it that matters.
+            }
+        }
+    }
+}
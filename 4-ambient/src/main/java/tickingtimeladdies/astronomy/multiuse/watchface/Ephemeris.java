@@ -0,0 +1,79 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Hand angles of the solar system bodies for a given instant. Each body hand is a sawtooth of its
+ * period: planets sweep the dial twice per period, the moon once per synodic month.
+ *
+ * <p>Pure Java with no allocation, so it can be called every frame. Time is taken as epoch millis
+ * and worked in double precision; a float of epoch seconds only resolves about two minutes.
+ */
+public final class Ephemeris {
+
+    public static final int MERCURY = 0;
+    public static final int VENUS = 1;
+    public static final int MARS = 2;
+    public static final int JUPITER = 3;
+    public static final int SATURN = 4;
+    public static final int URANUS = 5;
+    public static final int NEPTUNE = 6;
+    public static final int PLUTO = 7;
+    public static final int MOON = 8;
+    public static final int BODY_COUNT = 9;
+
+    /** Period of each body's hand in seconds. */
+    private static final double[] PERIOD_SECONDS = {
+            5067010.0,
+            10087200.0,
+            88775.22,
+            35733.312,
+            38517.12,
+            62035.2,
+            57974.4,
+            551880.0,
+            2551442.87
+    };
+
+    /** Degrees each hand sweeps per period. */
+    private static final double[] DEGREES_PER_PERIOD = {
+            720, 720, 720, 720, 720, 720, 720, 720, 360
+    };
+
+    /** Phase of each hand at the epoch, in degrees. */
+    private static final double[] OFFSET_DEGREES = {
+            0, 0, -150.3356, 0, 0, 0, 0, 0, -84.425
+    };
+
+    private static final double[] PERIODS_PER_MILLI = new double[BODY_COUNT];
+
+    static {
+        for (int i = 0; i < BODY_COUNT; i++) {
+            PERIODS_PER_MILLI[i] = 1.0 / (PERIOD_SECONDS[i] * 1000.0);
+        }
+    }
+
+    private Ephemeris() {
+    }
+
+    /**
+     * Writes the rotation in degrees, in [0, 360), of every body hand at {@code epochMillis} into
+     * {@code out[0]} to {@code out[BODY_COUNT - 1]}, indexed by the body constants.
+     */
+    public static void bodyRotations(long epochMillis, float[] out) {
+        for (int i = 0; i < BODY_COUNT; i++) {
+            out[i] = (float) rotation(i, epochMillis);
+        }
+    }
+
+    /** Rate at which {@code body}'s hand turns, in degrees per millisecond. */
+    public static double degreesPerMilli(int body) {
+        return DEGREES_PER_PERIOD[body] * PERIODS_PER_MILLI[body];
+    }
+
+    /** Rotation in degrees, in [0, 360), of {@code body}'s hand at {@code epochMillis}. */
+    public static double rotation(int body, long epochMillis) {
+        double periods = epochMillis * PERIODS_PER_MILLI[body];
+        double degrees = (periods - Math.floor(periods)) * DEGREES_PER_PERIOD[body]
+                + OFFSET_DEGREES[body];
+        return degrees - Math.floor(degrees / 360.0) * 360.0;
+    }
+}
@@ -0,0 +1,139 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Body hand angles sampled at a fixed cadence and stored as 16-bit fractions of a turn, so the
+ * per-frame cost of a body position is an index computation and two reads per body no matter how
+ * expensive the theory behind the table is.
+ *
+ * <p>The table is written at build time by {@link #main} (see the {@code generateEphemerisTable}
+ * task in build.gradle) into the {@value #ASSET_NAME} asset, which is stored uncompressed so the
+ * engine can memory-map it. This class is plain Java so the generator runs on the build host.
+ *
+ * <p>Layout, big-endian: magic, version, start epoch seconds (long), step seconds, sample count,
+ * body count, then for each sample one unsigned short per body.
+ */
+public final class EphemerisTable {
+
+    public static final String ASSET_NAME = "ephemeris.bin";
+
+    private static final int MAGIC = 0x45504831; // "EPH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+
+    /* What the generator writes: hourly from 2018-01-01T00:00Z for 30 years. */
+    private static final long DEFAULT_START_SECONDS = 1514764800L;
+    private static final int DEFAULT_STEP_SECONDS = 3600;
+    private static final int DEFAULT_SAMPLES = (int) (30 * 365.25 * 24) + 1;
+
+    private static final double TURN = 65536.0;
+    private static final float DEGREES_PER_UNIT = (float) (360.0 / TURN);
+
+    private final ByteBuffer data;
+    private final long startMillis;
+    private final long stepMillis;
+    private final int samples;
+    private final int bodies;
+    private final int sampleBytes;
+
+    /**
+     * Wraps a table previously written by {@link #write}, typically a mapped asset.
+     *
+     * @throws IOException if the header doesn't describe a table this code can read
+     */
+    public EphemerisTable(ByteBuffer buffer) throws IOException {
+        data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (data.remaining() < HEADER_BYTES || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not an ephemeris table");
+        }
+        startMillis = data.getLong(8) * 1000L;
+        stepMillis = data.getInt(16) * 1000L;
+        samples = data.getInt(20);
+        bodies = data.getInt(24);
+        sampleBytes = 2 * bodies;
+        if (bodies != Ephemeris.BODY_COUNT || samples < 2 || stepMillis <= 0
+                || data.limit() < HEADER_BYTES + (long) samples * sampleBytes) {
+            throw new IOException("Truncated or incompatible ephemeris table");
+        }
+    }
+
+    /** Whether {@code epochMillis} falls inside the sampled range. */
+    public boolean covers(long epochMillis) {
+        return epochMillis >= startMillis
+                && epochMillis < startMillis + (samples - 1) * stepMillis;
+    }
+
+    /**
+     * Writes the rotation in degrees, in [0, 360), of every body hand at {@code epochMillis} into
+     * {@code out}, indexed by the {@link Ephemeris} body constants, by interpolating between the
+     * two surrounding samples. Only valid where {@link #covers} is true.
+     */
+    public void bodyRotations(long epochMillis, float[] out) {
+        long offset = epochMillis - startMillis;
+        int index = (int) (offset / stepMillis);
+        float fraction = (offset - index * stepMillis) / (float) stepMillis;
+        int a = HEADER_BYTES + index * sampleBytes;
+        int b = a + sampleBytes;
+        for (int i = 0; i < bodies; i++) {
+            int from = data.getShort(a + 2 * i) & 0xFFFF;
+            int to = data.getShort(b + 2 * i) & 0xFFFF;
+            // Shortest way round, so a hand crossing 12 o'clock doesn't spin backwards.
+            int delta = (short) (to - from);
+            float units = from + delta * fraction;
+            if (units < 0) {
+                units += TURN;
+            } else if (units >= TURN) {
+                units -= TURN;
+            }
+            out[i] = units * DEGREES_PER_UNIT;
+        }
+    }
+
+    /**
+     * Samples {@link Ephemeris} every {@code stepSeconds} from {@code startSeconds} and writes the
+     * table to {@code file}.
+     */
+    public static void write(File file, long startSeconds, int stepSeconds, int samples)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startSeconds);
+            out.writeInt(stepSeconds);
+            out.writeInt(samples);
+            out.writeInt(Ephemeris.BODY_COUNT);
+            for (int s = 0; s < samples; s++) {
+                long millis = (startSeconds + (long) s * stepSeconds) * 1000L;
+                for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+                    double turns = Ephemeris.rotation(body, millis) / 360.0;
+                    out.writeShort((int) Math.round(turns * TURN) & 0xFFFF);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Build-time entry point: {@code EphemerisTable <output file>}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: EphemerisTable <output file>");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+        write(file, DEFAULT_START_SECONDS, DEFAULT_STEP_SECONDS, DEFAULT_SAMPLES);
+    }
+}
@@ -0,0 +1,192 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Picks the frame rate of the sweeping seconds hand from 60, 30, 15 or 1 fps. The rate is capped
+ * by battery level, stepped down when draws take too long for the current rate or vsyncs are
+ * being missed, and stepped back up after a stretch of comfortable frames. 1 fps means leave the
+ * vsync loop and fall back to the once-a-second timer; the governor allows another try after
+ * {@link #FALLBACK_RETRY_NANOS}.
+ *
+ * <p>All times are passed in as nanoseconds, normally Choreographer frame times and
+ * System.nanoTime() draw durations, so it can be driven by any clock.
+ */
+public final class FrameRateGovernor {
+
+    public static final int[] RATES = {60, 30, 15, 1};
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /* Step down when the average draw takes more than this share of the frame interval. */
+    private static final float DRAW_BUDGET = 0.5f;
+    /* Step up only when the average draw would fit this share of the faster rate's interval. */
+    private static final float STEP_UP_BUDGET = 0.25f;
+    /* Step down when more vsyncs than this are missed within one evaluation window. */
+    private static final int MISSED_FRAME_LIMIT = 3;
+    private static final long WINDOW_NANOS = NANOS_PER_SECOND;
+    /* Windows in a row that must be comfortable before stepping up. */
+    private static final int STEP_UP_WINDOWS = 3;
+    private static final long FALLBACK_RETRY_NANOS = 30 * NANOS_PER_SECOND;
+
+    /* Smoothing of the draw duration average. */
+    private static final float DRAW_AVERAGE_WEIGHT = 0.1f;
+
+    private int rateIndex;
+    private int batteryCapIndex;
+
+    private long lastVsyncNanos = -1;
+    private long vsyncIntervalNanos = NANOS_PER_SECOND / 60;
+    private long lastDrawVsyncNanos = -1;
+    private long windowStartNanos = -1;
+    private int missedInWindow;
+    private int comfortableWindows;
+    private float averageDrawNanos;
+    private long fallbackNanos = -1;
+
+    private long missedFrames;
+    private long rateChanges;
+
+    /** Current target frame rate. */
+    public int getRate() {
+        return RATES[rateIndex];
+    }
+
+    /**
+     * Caps the rate by battery level: full rate above 50%, then 30, 15 and 1 fps below 50%, 30%
+     * and 15%. Charging lifts the cap.
+     */
+    public void setBattery(int level, boolean charging) {
+        int cap;
+        if (charging || level > 50) {
+            cap = 0;
+        } else if (level > 30) {
+            cap = 1;
+        } else if (level > 15) {
+            cap = 2;
+        } else {
+            cap = RATES.length - 1;
+        }
+        batteryCapIndex = cap;
+        if (rateIndex < cap) {
+            setRateIndex(cap, lastVsyncNanos);
+        }
+    }
+
+    /** Feeds the duration of one onDraw. */
+    public void recordDraw(long durationNanos) {
+        if (averageDrawNanos == 0) {
+            averageDrawNanos = durationNanos;
+        } else {
+            averageDrawNanos += DRAW_AVERAGE_WEIGHT * (durationNanos - averageDrawNanos);
+        }
+    }
+
+    /**
+     * Feeds a vsync and re-evaluates the rate at the end of each window.
+     *
+     * @return whether a frame should be drawn on this vsync at the current rate
+     */
+    public boolean onVsync(long frameTimeNanos) {
+        if (lastVsyncNanos >= 0) {
+            long interval = frameTimeNanos - lastVsyncNanos;
+            long expected = vsyncIntervalNanos;
+            if (interval > expected + expected / 2) {
+                int missed = (int) ((interval + expected / 2) / expected) - 1;
+                missedInWindow += missed;
+                missedFrames += missed;
+            } else if (interval > 0) {
+                // Track the real vsync period, it isn't always exactly 60 Hz.
+                vsyncIntervalNanos += (interval - vsyncIntervalNanos) / 8;
+            }
+        }
+        lastVsyncNanos = frameTimeNanos;
+
+        if (windowStartNanos < 0) {
+            windowStartNanos = frameTimeNanos;
+        } else if (frameTimeNanos - windowStartNanos >= WINDOW_NANOS) {
+            evaluate(frameTimeNanos);
+            windowStartNanos = frameTimeNanos;
+            missedInWindow = 0;
+        }
+
+        if (isFallenBack()) {
+            return false;
+        }
+        long interval = NANOS_PER_SECOND / getRate();
+        // Half a vsync of slack so 30 fps lands on every other vsync rather than drifting.
+        if (lastDrawVsyncNanos < 0
+                || frameTimeNanos - lastDrawVsyncNanos >= interval - vsyncIntervalNanos / 2) {
+            lastDrawVsyncNanos = frameTimeNanos;
+            return true;
+        }
+        return false;
+    }
+
+    private void evaluate(long nowNanos) {
+        long interval = NANOS_PER_SECOND / getRate();
+        if (missedInWindow > MISSED_FRAME_LIMIT || averageDrawNanos > DRAW_BUDGET * interval) {
+            comfortableWindows = 0;
+            setRateIndex(Math.min(rateIndex + 1, RATES.length - 1), nowNanos);
+            return;
+        }
+        if (rateIndex > batteryCapIndex && missedInWindow == 0) {
+            long fasterInterval = NANOS_PER_SECOND / RATES[rateIndex - 1];
+            if (averageDrawNanos <= STEP_UP_BUDGET * fasterInterval
+                    && ++comfortableWindows >= STEP_UP_WINDOWS) {
+                comfortableWindows = 0;
+                setRateIndex(rateIndex - 1, nowNanos);
+            }
+        } else {
+            comfortableWindows = 0;
+        }
+    }
+
+    private void setRateIndex(int index, long nowNanos) {
+        if (index == rateIndex) {
+            return;
+        }
+        rateIndex = index;
+        rateChanges++;
+        if (getRate() == 1) {
+            fallbackNanos = nowNanos;
+        }
+    }
+
+    /** Whether the governor has dropped to 1 fps and the vsync loop should stop. */
+    public boolean isFallenBack() {
+        return getRate() == 1;
+    }
+
+    /**
+     * Whether, having fallen back, enough time has passed at {@code nowNanos} to try the vsync
+     * loop again. If so the governor restarts at the slowest vsync rate the battery allows.
+     */
+    public boolean mayResume(long nowNanos) {
+        if (!isFallenBack() || batteryCapIndex == RATES.length - 1
+                || nowNanos - fallbackNanos < FALLBACK_RETRY_NANOS) {
+            return false;
+        }
+        setRateIndex(RATES.length - 2, nowNanos);
+        averageDrawNanos = 0;
+        reset();
+        return true;
+    }
+
+    /** Forgets vsync history, for when the loop stops and later restarts. */
+    public void reset() {
+        lastVsyncNanos = -1;
+        lastDrawVsyncNanos = -1;
+        windowStartNanos = -1;
+        missedInWindow = 0;
+        comfortableWindows = 0;
+    }
+
+    /** Vsyncs missed since construction. */
+    public long getMissedFrames() {
+        return missedFrames;
+    }
+
+    /** Rate changes since construction. */
+    public long getRateChanges() {
+        return rateChanges;
+    }
+}
@@ -0,0 +1,35 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Works out how long until something on the face visibly changes, so the interactive timer can
+ * sleep until then instead of waking every second. Hands are quantized the same way the base
+ * layer compares them: rotation divided by the angle of one pixel at the rim, rounded.
+ */
+final class FrameScheduler {
+
+    private FrameScheduler() {
+    }
+
+    /** Quantized rotation; two frames with the same key for a hand draw it identically. */
+    static int quantize(float rotation, float stepDegrees) {
+        return Math.round(rotation / stepDegrees);
+    }
+
+    /**
+     * Milliseconds until a hand at {@code rotation}, turning at {@code degreesPerMilli}, reaches
+     * its next quantization boundary. Long.MAX_VALUE for a hand that doesn't turn.
+     */
+    static long millisUntilNextStep(float rotation, double degreesPerMilli, float stepDegrees) {
+        if (degreesPerMilli <= 0) {
+            return Long.MAX_VALUE;
+        }
+        double boundary = (Math.floor(rotation / stepDegrees + 0.5) + 0.5) * stepDegrees;
+        // One extra milli so we land past the boundary rather than on it.
+        return (long) Math.ceil((boundary - rotation) / degreesPerMilli) + 1;
+    }
+
+    /** Milliseconds from {@code now} to the next multiple of {@code period}. */
+    static long millisUntilNextBoundary(long now, long period) {
+        return period - (now % period);
+    }
+}
@@ -0,0 +1,37 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Colours for the sprites of a {@link TintedAtlas}: one for every sprite's mask and one per
+ * sprite for its accent layer. A theme is a handful of ints; applying one decodes nothing.
+ */
+public final class HandTheme {
+
+    private final int mask;
+    private final int[] accents;
+
+    /**
+     * {@code accents} is indexed like the atlas's sprites; entries for sprites without an accent
+     * layer are ignored.
+     */
+    public HandTheme(int mask, int[] accents) {
+        this.mask = mask;
+        this.accents = accents.clone();
+    }
+
+    /** Every mask and accent of {@code sprites} sprites in one colour. */
+    public static HandTheme solid(int colour, int sprites) {
+        int[] accents = new int[sprites];
+        for (int i = 0; i < sprites; i++) {
+            accents[i] = colour;
+        }
+        return new HandTheme(colour, accents);
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public int getAccent(int sprite) {
+        return accents[sprite];
+    }
+}
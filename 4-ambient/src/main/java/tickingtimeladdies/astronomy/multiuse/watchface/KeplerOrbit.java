@@ -0,0 +1,93 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Mean orbital elements of one body and a Kepler equation solver for its equation of center,
+ * the angle by which the body runs ahead of (or behind) a uniformly moving mean body.
+ *
+ * <p>The solver is warm-started from the previous solution, so when called at a steady cadence
+ * it converges in one or two Newton steps and never takes more than {@link #MAX_ITERATIONS}.
+ * Not thread-safe; each caller keeps its own instance.
+ */
+public final class KeplerOrbit {
+
+    /** Newton steps per solve. Three is exact to double precision for any planet from a warm start. */
+    public static final int MAX_ITERATIONS = 3;
+
+    private static final double TOLERANCE = 1e-10;
+
+    /* Days from the Unix epoch to the element epoch, 2000 Jan 0.0 TT (JD 2451543.5). */
+    private static final double EPOCH_DAYS = 10956.0;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    private final double meanAnomalyAtEpoch;
+    private final double meanMotion;
+    private final double eccentricity;
+
+    private boolean solved;
+    private double lastMeanAnomaly;
+    private double lastEccentricAnomaly;
+    private long iterations;
+    private long solves;
+
+    /**
+     * @param meanAnomalyAtEpochDegrees mean anomaly at 2000 Jan 0.0, in degrees
+     * @param meanMotionDegreesPerDay   mean motion in degrees per day
+     * @param eccentricity              orbital eccentricity, in [0, 1)
+     */
+    public KeplerOrbit(double meanAnomalyAtEpochDegrees, double meanMotionDegreesPerDay,
+            double eccentricity) {
+        this.meanAnomalyAtEpoch = Math.toRadians(meanAnomalyAtEpochDegrees);
+        this.meanMotion = Math.toRadians(meanMotionDegreesPerDay);
+        this.eccentricity = eccentricity;
+    }
+
+    /**
+     * Equation of center at {@code epochMillis} in degrees: true anomaly minus mean anomaly.
+     */
+    public double equationOfCenter(long epochMillis) {
+        double days = epochMillis / MILLIS_PER_DAY - EPOCH_DAYS;
+        double mean = meanAnomalyAtEpoch + meanMotion * days;
+        mean -= 2 * Math.PI * Math.floor(mean / (2 * Math.PI));
+
+        double e = eccentricity;
+        double ecc;
+        if (solved) {
+            // Step the previous solution by dE/dM = 1 / (1 - e cos E). Across the wrap, shift it
+            // by the same turn as the mean anomaly, or Newton starts a whole turn away.
+            double delta = mean - lastMeanAnomaly;
+            double wrap = 2 * Math.PI * Math.floor(delta / (2 * Math.PI) + 0.5);
+            delta -= wrap;
+            ecc = lastEccentricAnomaly + wrap + delta / (1 - e * Math.cos(lastEccentricAnomaly));
+        } else {
+            ecc = mean + e * Math.sin(mean);
+        }
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            iterations++;
+            double step = (ecc - e * Math.sin(ecc) - mean) / (1 - e * Math.cos(ecc));
+            ecc -= step;
+            if (Math.abs(step) < TOLERANCE) {
+                break;
+            }
+        }
+        solves++;
+        solved = true;
+        lastMeanAnomaly = mean;
+        lastEccentricAnomaly = ecc;
+
+        double trueAnomaly = 2 * Math.atan2(Math.sqrt(1 + e) * Math.sin(ecc / 2),
+                Math.sqrt(1 - e) * Math.cos(ecc / 2));
+        double center = trueAnomaly - mean;
+        center -= 2 * Math.PI * Math.floor(center / (2 * Math.PI) + 0.5);
+        return Math.toDegrees(center);
+    }
+
+    /** Total Newton steps taken since construction. */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /** Total calls to {@link #equationOfCenter}. */
+    public long getSolves() {
+        return solves;
+    }
+}
@@ -20,36 +20,40 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
 import android.net.Uri;
-import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Calendar;
-import java.util.LinkedList;
 import java.util.Queue;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
@@ -70,63 +74,254 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
+    /**
+     * Ambient mode only redraws once a minute, so the ambient face is rendered once per minute
+     * into an offscreen bitmap and blitted from there.
+     */
+    private static final long AMBIENT_FRAME_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** How far back the pressure history is restored from disk on start. */
+    private static final long PRESSURE_RESTORE_MS =
+            PressureTrend.HISTORY_SIZE * PressurePipeline.SAMPLE_INTERVAL_MS;
+
+    /**
+     * Records every raw barometer event to {@link #PRESSURE_RECORDING_FILE} for replay on the
+     * build host with the replayPressure task. Development only: it grows without bound.
+     */
+    private static final boolean RECORD_PRESSURE = false;
+    private static final String PRESSURE_RECORDING_FILE = "pressure.rec";
 
+    /*
+     * Temperature and humidity change slowly: a three-reading burst every ten minutes, at most
+     * ten seconds of sensor time an hour. Light every five minutes, single readings.
+     */
+    private static final SensorHub.Policy ENVIRONMENT_POLICY =
+            new SensorHub.Policy(TimeUnit.MINUTES.toMillis(10), 3, TimeUnit.SECONDS.toMillis(10));
+    private static final SensorHub.Policy LIGHT_POLICY =
+            new SensorHub.Policy(TimeUnit.MINUTES.toMillis(5), 1, TimeUnit.SECONDS.toMillis(10));
+    private static final int ENVIRONMENT_HISTORY_SIZE = 36;
+
+    /* Face settings; only whether the seconds hand sweeps, which a tap toggles. */
+    private static final String PREFS = "watch_face";
+    private static final String KEY_SWEEP_SECONDS = "sweep_seconds";
+
+    /* Threads decoding sprites; the watch has few cores and the main thread needs one. */
+    private static final int ASSET_LOADER_THREADS = 2;
+
+    /*
+     * Residency modes, see BitmapResidency. The white hand set is drawn in ambient and in
+     * interactive mode unless the colour hands are showing.
+     */
+    private static final int RESIDENCY_AMBIENT = 1;
+    private static final int RESIDENCY_INTERACTIVE = 2;
+    private static final int RESIDENCY_COLOUR = 4;
+
+    /**
+     * Resident bitmap budget in full-screen ARGB_8888 bitmaps: enough for both backgrounds, the
+     * base layer, both ambient frames and a hand set, so only the other hand set is dropped
+     * when switching modes.
+     */
+    private static final int RESIDENCY_BUDGET_SCREENS = 6;
+
+    /** Released bitmaps kept for reuse, in full-screen ARGB_8888 bitmaps. */
+    private static final int BITMAP_POOL_SCREENS = 2;
+
+    private static final long PRESSURE_3H_MS = TimeUnit.HOURS.toMillis(3);
+    private static final long PRESSURE_24H_MS = TimeUnit.HOURS.toMillis(24);
+
+    /*
+     * Rotations of every hand, indexed by the ROT_ constants. The sprite atlases use the same
+     * indices for each hand's sprite, with the center image at SPRITE_CENTER.
+     */
+    private static final int ROT_MERCURY = Ephemeris.MERCURY;
+    private static final int ROT_VENUS = Ephemeris.VENUS;
+    private static final int ROT_MARS = Ephemeris.MARS;
+    private static final int ROT_JUPITER = Ephemeris.JUPITER;
+    private static final int ROT_SATURN = Ephemeris.SATURN;
+    private static final int ROT_URANUS = Ephemeris.URANUS;
+    private static final int ROT_NEPTUNE = Ephemeris.NEPTUNE;
+    private static final int ROT_PLUTO = Ephemeris.PLUTO;
+    private static final int ROT_MOON = Ephemeris.MOON;
+    private static final int ROT_MINUTE = Ephemeris.BODY_COUNT;
+    private static final int ROT_HOUR = Ephemeris.BODY_COUNT + 1;
+    private static final int ROT_SECOND = Ephemeris.BODY_COUNT + 2;
+    private static final int ROT_COUNT = Ephemeris.BODY_COUNT + 3;
+    private static final int SPRITE_CENTER = ROT_COUNT;
+
+    /* Back to front. Pluto is left out of the face for now. */
+    private static final int[] HAND_DRAW_ORDER = {
+            ROT_MARS, ROT_MERCURY, ROT_VENUS, ROT_JUPITER, ROT_SATURN, ROT_URANUS, ROT_NEPTUNE,
+            ROT_MOON, ROT_MINUTE, ROT_HOUR
+    };
+
+    private static final int[] AMBIENT_SPRITES = {
+            R.drawable.mercury_hand_dark,
+            R.drawable.venus_hand_dark,
+            R.drawable.mars_hand_dark,
+            R.drawable.jupiter_hand_dark,
+            R.drawable.saturn_hand_dark,
+            R.drawable.uranus_hand_dark,
+            R.drawable.neptune_hand_dark,
+            R.drawable.pluto_hand_white,
+            R.drawable.moon_hand_dark,
+            R.drawable.minute_hand_white,
+            R.drawable.earth_hand_white,
+            R.drawable.seconds_hand_white,
+            R.drawable.center_image_white
+    };
+
+    /*
+     * The colour hand set is tinted at draw time: every sprite's white shape as its mask, plus
+     * the part drawn in the body's colour as an accent layer. See TintedAtlas.
+     */
+    private static final int[] TINT_MASKS = {
+            R.drawable.mercury_hand_white,
+            R.drawable.venus_hand_white,
+            R.drawable.mars_hand_white,
+            R.drawable.jupiter_hand_white,
+            R.drawable.saturn_hand_white,
+            R.drawable.uranus_hand_white,
+            R.drawable.neptune_hand_white,
+            R.drawable.pluto_hand_white,
+            R.drawable.moon_hand_white,
+            R.drawable.minute_hand_white,
+            R.drawable.earth_hand_white,
+            R.drawable.seconds_hand_white,
+            R.drawable.center_image_white
+    };
+
+    private static final int[] TINT_ACCENTS = {
+            R.drawable.mercury_hand_accent,
+            R.drawable.venus_hand_accent,
+            R.drawable.mars_hand_accent,
+            R.drawable.jupiter_hand_accent,
+            R.drawable.saturn_hand_accent,
+            R.drawable.uranus_hand_accent,
+            R.drawable.neptune_hand_accent,
+            0,
+            R.drawable.moon_hand_accent,
+            0,
+            R.drawable.earth_hand_accent,
+            0,
+            R.drawable.center_image_accent
+    };
+
+    /** The original colour hands: white, with each body's accent in its own colour. */
+    private static final HandTheme COLOUR_THEME = new HandTheme(Color.WHITE, new int[] {
+            0xFFC2865A, // mercury
+            0xFFFFFC88, // venus
+            0xFFE70000, // mars
+            0xFFFF7E03, // jupiter
+            0xFFFFCD44, // saturn
+            0xFF53FFF9, // uranus
+            0xFF359DFF, // neptune
+            Color.WHITE,
+            0xFF93CED1, // moon
+            Color.WHITE,
+            0xFF00A47A, // earth
+            Color.WHITE,
+            0xFFFFD603  // center
+    });
+
+
+
+    /* The engine most recently created, which gets memory trim callbacks. */
+    private Engine mEngine;
 
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        mEngine = new Engine();
+        return mEngine;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mEngine != null) {
+            mEngine.trimMemory(level);
+        }
     }
 
     private class Engine extends CanvasWatchFaceService.Engine {
 
-        /* Handler to update the time once a second in interactive mode. */
+        /*
+         * Handler to update the time in interactive mode. Rather than ticking every second it
+         * sleeps until the next time something on the face visibly changes, and skips the redraw
+         * if nothing did.
+         */
         private final Handler mUpdateTimeHandler = new Handler() {
             @Override
             public void handleMessage(Message message) {
                 if (R.id.message_update == message.what) {
-                    invalidate();
+                    if (mSweepSeconds && mGovernor.mayResume(System.nanoTime())) {
+                        updateTimer();
+                        return;
+                    }
+                    long timeMs = System.currentTimeMillis();
+                    if (frameChanged(timeMs)) {
+                        invalidate();
+                        mFramesExecuted++;
+                    } else {
+                        mFramesSkipped++;
+                    }
                     if (shouldTimerBeRunning()) {
-                        long timeMs = System.currentTimeMillis();
-                        long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                                - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                        mUpdateTimeHandler.sendEmptyMessageDelayed(R.id.message_update, delayMs);
+                        mUpdateTimeHandler.sendEmptyMessageDelayed(R.id.message_update,
+                                nextFrameDelayMs(timeMs));
                     }
                 }
             }
         };
 
+        private final Calendar mScheduleCalendar = Calendar.getInstance();
+        private final float[] mScheduleRotations = new float[ROT_COUNT];
+        private int mDrawnSecond = -1;
+        private int mFramesExecuted;
+        private int mFramesSkipped;
+
+        /*
+         * Optional sweeping seconds hand, defaulting to R.bool.sweep_seconds and toggled by a
+         * tap. While it is on and the governor allows more than 1 fps, interactive frames are
+         * paced by Choreographer instead of mUpdateTimeHandler.
+         */
+        private boolean mSweepSeconds;
+        private boolean mSweepRunning;
+        private final FrameRateGovernor mGovernor = new FrameRateGovernor();
+
+        private final Choreographer.FrameCallback mSweepCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (!mSweepRunning) {
+                    return;
+                }
+                // Only the seconds hand sweeps; without one there is nothing to pace.
+                if (!drawsSecondsHand()) {
+                    updateTimer();
+                    return;
+                }
+                if (mGovernor.onVsync(frameTimeNanos)) {
+                    invalidate();
+                }
+                if (mGovernor.isFallenBack()) {
+                    Log.d("MyWatchFaceService", "sweep falling back to 1 Hz, missed "
+                            + mGovernor.getMissedFrames() + " vsyncs");
+                    updateTimer();
+                    return;
+                }
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        };
+
 
 
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                invalidateAmbientFrames();
 
                 invalidate();
             }
         };
-/*
-        private final BroadcastReceiver shutdown = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-
-                if(Intent.ACTION_SHUTDOWN.equals(intent.getAction())) {
-                    Log.d("MyWatchFaceService","Saving");
-                    String filename = "lastPressure";
-                    String string = String.valueOf(pressureBuffer.peekFirst());
-                    FileOutputStream outputStream;
-
-                    try {
-                        File file = new File(context.getFilesDir(), filename);
-                        outputStream = openFileOutput(filename, Context.MODE_PRIVATE);
-                        outputStream.write(string.getBytes());
-                        outputStream.close();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        };*/
 
         private boolean mRegisteredTimeZoneReceiver = false;
 
@@ -138,53 +333,26 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
 
         private Calendar mCalendar;
-        private Calendar UTCCalendar;
 
         private Paint mBackgroundPaint;
         private Paint mHandPaint;
         private Paint altiPaint;
 
         private boolean mAmbient;
-        private boolean minuteFlag;
 
         private float pressure;
-        private long lastTime;
+        private int pressureSamples;
 
         private Bitmap mBackgroundBitmap;
         private Bitmap mGrayBackgroundBitmap;
 
-        private Bitmap mercuryHourHandAmb;
-        private Bitmap venusHourHandAmb;
-        private Bitmap marsHourHandAmb;
-        private Bitmap earthHourHandAmb;
-        private Bitmap jupiterHourHandAmb;
-        private Bitmap saturnHourHandAmb;
-        private Bitmap uranusHourHandAmb;
-        private Bitmap neptuneHourHandAmb;
-        private Bitmap plutoHourHandAmb;
-        private Bitmap moonHandAmb;
-
-        private Bitmap minuteHandAmb;
-        private Bitmap secondsHandAmb;
-        private Bitmap centerImAmb;
-
-        private Bitmap mercuryHourHandColour;
-        private Bitmap venusHourHandColour;
-        private Bitmap marsHourHandColour;
-        private Bitmap earthHourHandColour;
-        private Bitmap jupiterHourHandColour;
-        private Bitmap saturnHourHandColour;
-        private Bitmap uranusHourHandColour;
-        private Bitmap neptuneHourHandColour;
-        private Bitmap plutoHourHandColour;
-        private Bitmap moonHandColour;
-
-        private Bitmap minuteHandColour;
-        private Bitmap secondsHandColour;
-        private Bitmap centerImColour;
-
-
+        /* Hand sprites, one atlas per theme, indexed by the ROT_ constants plus SPRITE_CENTER. */
+        private SpriteAtlas mAmbientAtlas;
+        private TintedAtlas mColourAtlas;
 
+        private final RectF mHandDst = new RectF();
+        private final RectF mCenterDst = new RectF();
+        private final RectF mSecondsDst = new RectF();
 
         private int handState;
 
@@ -210,24 +378,115 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         private float centerImH;
         private float centerImW;
 
-        private BatteryManager bm = (BatteryManager)getSystemService(BATTERY_SERVICE);
-
-        private Matrix transformation= new Matrix();
-        private Matrix centerTransform= new Matrix();
-        private Matrix secondsTransform =new Matrix();
-
-        private float mScale = 1;
+        private final BatteryState mBattery = new BatteryState(new BatteryState.Listener() {
+            @Override
+            public void onBatteryChanged(boolean arcChanged) {
+                mGovernor.setBattery(mBattery.getLevel(), mBattery.isCharging());
+                if (arcChanged && !mAmbient) {
+                    invalidate();
+                }
+            }
+        });
+
+        /* Sprites and backgrounds decode here; see loadAtlas and loadBackground. */
+        private AssetLoader mAssetLoader;
+        private int mAssetGeneration;
+        private float mHandScale;
+
+        /* Every bitmap is allocated through mDecoder and given back to it, for reuse. */
+        private final BitmapPool mBitmapPool = new BitmapPool();
+        private BitmapDecoder mDecoder;
+        /* Derived bitmaps kept across restarts; a hit skips the decode and the transforms. */
+        private DerivedBitmapCache mDerivedCache;
+
+        /* Which bitmaps are held; see registerResidents. */
+        private BitmapResidency mResidency;
+        private BitmapResidency.Entry mAmbientAtlasEntry;
+        private BitmapResidency.Entry mColourAtlasEntry;
+        private BitmapResidency.Entry mBackgroundEntry;
+        private BitmapResidency.Entry mBaseLayerEntry;
+        private BitmapResidency.Entry mAmbientFramesEntry;
+        private long mStartNanos;
+        private long mTimeToFirstFrameMs = -1;
+        private long mTimeToFullFrameMs = -1;
 
         public SensorManager mSensorManager;
         public Sensor mPressure;
-        public pressureReader pReader= new pressureReader();
         private boolean pSensor;
+        private SensorHub mSensorHub;
+        private PressurePipeline mPressurePipeline;
+
+        private final PressureTrend mPressureTrend =
+                new PressureTrend(PressureTrend.HISTORY_SIZE, PressurePipeline.SAMPLE_INTERVAL_MS);
+
+        /*
+         * onDraw and the ambient worker each fill their own rotation array so the worker never
+         * touches state owned by the UI thread.
+         */
 
-        private LinkedList<Float> pressureBuffer=new LinkedList<Float>();
+        private final float[] mRotations = new float[ROT_COUNT];
+        private final OrbitModel mOrbits = new OrbitModel();
+
+        /*
+         * Interactive base layer: background, rings, altitude text and every hand except the
+         * seconds hand. Rebuilt only when updateBaseLayerKeys() sees a visible change; each tick
+         * otherwise just blits it and draws the seconds hand on top.
+         */
+        private Bitmap mBaseLayer;
+        private Canvas mBaseLayerCanvas;
+        private boolean mBaseLayerValid;
+        private final int[] mBaseLayerKeys = new int[ROT_SECOND];
+        private int mBaseLayerBattery = -1;
+        private int mBaseLayerPressureSamples = -1;
+        private int mBaseLayerHandState;
+        private float mPixelStepDegrees = 1f;
+        private int mBaseLayerRebuilds;
+        private int mBaseLayerReuses;
+
+        /*
+         * Ambient frame cache. mAmbientFrame is what onDraw blits; mAmbientBackFrame is rendered
+         * ahead of time on mAmbientRenderThread for the coming minute and swapped in once that
+         * minute arrives. Both are guarded by mAmbientFrameLock.
+         */
+        private final Object mAmbientFrameLock = new Object();
+        private Bitmap mAmbientFrame;
+        private Bitmap mAmbientBackFrame;
+        private long mAmbientFrameMinute = -1;
+        private long mAmbientBackFrameMinute = -1;
+        private volatile long mAmbientPrerenderMinute = -1;
+
+        private HandlerThread mAmbientRenderThread;
+        private Handler mAmbientRenderHandler;
+        private Paint mAmbientRenderPaint;
+        private Calendar mAmbientRenderCalendar;
+        private final float[] mAmbientRenderRotations = new float[ROT_COUNT];
+        private final OrbitModel mAmbientRenderOrbits = new OrbitModel();
+
+        private final Runnable mAmbientPrerender = new Runnable() {
+            @Override
+            public void run() {
+                long minute = mAmbientPrerenderMinute;
+                synchronized (mAmbientFrameLock) {
+                    // Either may have been released since this was posted.
+                    if (mAmbientBackFrame == null || !mAmbientAtlas.isPacked()
+                            || mAmbientBackFrameMinute == minute
+                            || mAmbientFrameMinute == minute) {
+                        return;
+                    }
+                    renderAmbientFrame(mAmbientBackFrame, minute * AMBIENT_FRAME_MS,
+                            mAmbientRenderCalendar, mAmbientRenderRotations,
+                            mAmbientRenderPaint);
+                    mAmbientBackFrameMinute = minute;
+                }
+            }
+        };
 
         private Paint goodWeatherPaint;
         private Paint badWeatherPaint;
 
+        /* Precomputed body angles mapped from the APK, or null to compute them directly. */
+        private EphemerisTable mEphemerisTable;
+
 
 
         @Override
@@ -240,59 +499,75 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             if (mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE) != null){
                 mPressure = mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
                 pSensor=true;
+                // Background alarms stop touching the log while the pipeline owns it.
+                BackgroundPressureSampler.cancel(MyWatchFaceService.this);
+                // The wake-up variant keeps batches coming with the screen off.
+                Sensor pipelineSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE, true);
+                if (pipelineSensor == null) {
+                    pipelineSensor = mPressure;
+                }
+                PressureLog log = openPressureLog();
+                mPressurePipeline = new PressurePipeline(mSensorManager, pipelineSensor, log,
+                        new PressurePipeline.Listener() {
+                            @Override
+                            public void onPressureSamples() {
+                                drainPressureSamples();
+                            }
+                        });
+                restorePressure(log);
+                if (!mPressureTrend.getHistory().isEmpty()) {
+                    mPressurePipeline.setLastSampleTime(
+                            mPressureTrend.getHistory().newestTime());
+                }
+                if (RECORD_PRESSURE) {
+                    startPressureRecording(pipelineSensor);
+                }
+                mPressurePipeline.start();
             }
             else {
                 pSensor=false;
             }
 
+            // Nothing is drawn from these yet; the hub keeps the samples and counts them.
+            mSensorHub = new SensorHub(mSensorManager, null);
+            mSensorHub.addChannel(Sensor.TYPE_AMBIENT_TEMPERATURE, ENVIRONMENT_POLICY,
+                    ENVIRONMENT_HISTORY_SIZE);
+            mSensorHub.addChannel(Sensor.TYPE_RELATIVE_HUMIDITY, ENVIRONMENT_POLICY,
+                    ENVIRONMENT_HISTORY_SIZE);
+            mSensorHub.addChannel(Sensor.TYPE_LIGHT, LIGHT_POLICY, ENVIRONMENT_HISTORY_SIZE);
+            mSensorHub.start();
+
 
 
 
 
 
-            setWatchFaceStyle(new WatchFaceStyle.Builder(MyWatchFaceService.this).build());
+            setWatchFaceStyle(new WatchFaceStyle.Builder(MyWatchFaceService.this)
+                    .setAcceptsTapEvents(true)
+                    .build());
+            mSweepSeconds = getSharedPreferences(PREFS, Context.MODE_PRIVATE).getBoolean(
+                    KEY_SWEEP_SECONDS, getResources().getBoolean(R.bool.sweep_seconds));
 
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(Color.BLACK);
 
-            final int backgroundResId = R.drawable.custom_background_black;
-
-            mBackgroundBitmap = BitmapFactory.decodeResource(getResources(), backgroundResId);
-
+            mStartNanos = System.nanoTime();
+            mAssetLoader = new AssetLoader(ASSET_LOADER_THREADS);
 
 
-            centerImAmb = BitmapFactory.decodeResource(getResources(),R.drawable.center_image_white);
 
-            mercuryHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.mercury_hand_dark);
-            venusHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.venus_hand_dark);
-            earthHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.earth_hand_white);
-            marsHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.mars_hand_dark);
-            jupiterHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.jupiter_hand_dark);
-            saturnHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.saturn_hand_dark);
-            uranusHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.uranus_hand_dark);
-            neptuneHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.neptune_hand_dark);
-            plutoHourHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.pluto_hand_white);
+            mEphemerisTable = openEphemerisTable();
 
-            moonHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.moon_hand_dark);
-            minuteHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.minute_hand_white);
-            secondsHandAmb = BitmapFactory.decodeResource(getResources(),R.drawable.seconds_hand_white);
-
-
-            centerImColour= BitmapFactory.decodeResource(getResources(),R.drawable.center_image_colour);
-
-            mercuryHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.mercury_hand_colour);
-            venusHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.venus_hand_colour);
-            earthHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.earth_hand_colour);
-            marsHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.mars_hand_colour);
-            jupiterHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.jupiter_hand_colour);
-            saturnHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.saturn_hand_colour);
-            uranusHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.uranus_hand_colour);
-            neptuneHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.neptune_hand_colour);
-            plutoHourHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.pluto_hand_colour);
-
-            moonHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.moon_hand_colour);
-            minuteHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.minute_hand_colour);
-            secondsHandColour = BitmapFactory.decodeResource(getResources(),R.drawable.seconds_hand_colour);
+            // Decoded and packed at their on-screen size, off the main thread, once a frame
+            // needs them.
+            mDecoder = new BitmapDecoder(getResources(), mBitmapPool);
+            // Every install rewrites the APK, so its mtime versions whatever was derived from it.
+            mDerivedCache = new DerivedBitmapCache(new File(getCacheDir(), "derived"),
+                    new File(getPackageCodePath()).lastModified(), mDecoder);
+            mAmbientAtlas = new SpriteAtlas(mDecoder, AMBIENT_SPRITES, Bitmap.Config.ARGB_8888);
+            mColourAtlas = new TintedAtlas(mDecoder, TINT_MASKS, TINT_ACCENTS);
+            mColourAtlas.setTheme(COLOUR_THEME);
+            registerResidents();
 
 
             mHandPaint = new Paint();
@@ -328,8 +603,16 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             altiPaint.setShadowLayer(SHADOW_RADIUS/2, 0, 0, Color.WHITE);
 
             mCalendar = Calendar.getInstance();
-            UTCCalendar=Calendar.getInstance(TimeZone.getTimeZone("GMT"));
 
+            mAmbientRenderPaint = new Paint(mHandPaint);
+            mAmbientRenderPaint.setAntiAlias(false);
+            // Sprites are pre-scaled, so unfiltered sampling only costs a little rotation aliasing.
+            mAmbientRenderPaint.setFilterBitmap(false);
+            mAmbientRenderCalendar = Calendar.getInstance();
+
+            mAmbientRenderThread = new HandlerThread("AmbientRender");
+            mAmbientRenderThread.start();
+            mAmbientRenderHandler = new Handler(mAmbientRenderThread.getLooper());
 
 
 
@@ -338,6 +621,20 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(R.id.message_update);
+            stopSweep();
+            if (mPressurePipeline != null) {
+                mPressurePipeline.stop();
+                BackgroundPressureSampler.schedule(MyWatchFaceService.this);
+            }
+            mSensorHub.stop();
+            mAssetLoader.shutdown();
+            mAmbientRenderHandler.removeCallbacks(mAmbientPrerender);
+            mAmbientRenderThread.quit();
+            mResidency.releaseAll();
+            mBitmapPool.clear();
+            if (mEngine == this) {
+                mEngine = null;
+            }
             super.onDestroy();
         }
 
@@ -346,6 +643,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            invalidateAmbientFrames();
         }
 
         @Override
@@ -354,6 +652,19 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             invalidate();
         }
 
+        @Override
+        public void onTapCommand(int tapType, int x, int y, long eventTime) {
+            if (tapType != TAP_TYPE_TAP) {
+                return;
+            }
+            mSweepSeconds = !mSweepSeconds;
+            getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                    .putBoolean(KEY_SWEEP_SECONDS, mSweepSeconds)
+                    .apply();
+            invalidate();
+            updateTimer();
+        }
+
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
@@ -362,13 +673,16 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
             if (inAmbientMode) {
                 mHandPaint.setAntiAlias(false);
+                mHandPaint.setFilterBitmap(false);
                 handState=2;
                 if(pSensor==true) {
                 }
 
             } else {
                 mHandPaint.setAntiAlias(true);
+                mHandPaint.setFilterBitmap(true);
                 handState=1;
+                mBaseLayerValid = false;
 
             }
            // handState=1;
@@ -393,264 +707,804 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
              */
             mCenterX = mWidth / 2f;
             mCenterY = mHeight / 2f;
-            mScale = ((float) width) / (float) mBackgroundBitmap.getWidth();
             /*
              * Calculate the lengths of the watch hands and store them in member variables.
              */
 
-            mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
-                    (int) (mBackgroundBitmap.getWidth() * mScale),
-                    (int) (mBackgroundBitmap.getHeight() * mScale), true);
-
-            if (!mBurnInProtection || !mLowBitAmbient) {
-                initGrayBackgroundBitmap();
-            }
+            float handScale=(mCenterY-(BATT_RING_OFFSET)-2)/(mColourAtlas.getIntrinsicHeight(ROT_MARS)
+                    +mColourAtlas.getIntrinsicHeight(SPRITE_CENTER)/2);
+            mHandScale = handScale;
 
-            marsH=marsHourHandColour.getHeight();
-            marsW=marsHourHandColour.getWidth();
-            float handScale=(mCenterY-(BATT_RING_OFFSET)-2)/(marsH+centerImColour.getHeight()/2);
-            marsH=handScale*marsH;
-            marsW=handScale*marsW;
+            marsH=mColourAtlas.getScaledHeight(ROT_MARS, handScale);
+            marsW=mColourAtlas.getScaledWidth(ROT_MARS, handScale);
 
-            centerImH=centerImColour.getHeight()*handScale;
-            centerImW=centerImColour.getWidth()*handScale;
+            centerImH=mColourAtlas.getScaledHeight(SPRITE_CENTER, handScale);
+            centerImW=mColourAtlas.getScaledWidth(SPRITE_CENTER, handScale);
 
-            transformation.setScale(handScale,handScale);
-            transformation.postTranslate(mCenterX-marsW/2,mCenterY-marsH-centerImH/2+2);
+            float handLeft = mCenterX-marsW/2;
+            float handTop = mCenterY-marsH-centerImH/2+2;
+            mHandDst.set(handLeft, handTop, handLeft+marsW, handTop+marsH);
 
-            centerTransform.setScale(handScale,handScale);
-            centerTransform.postTranslate(mCenterX-centerImH/2,mCenterY-centerImW/2);
+            float centerLeft = mCenterX-centerImH/2;
+            float centerTop = mCenterY-centerImW/2;
+            mCenterDst.set(centerLeft, centerTop, centerLeft+centerImW, centerTop+centerImH);
 
-            secondsTransform.setScale(handScale,handScale);
-            secondsTransform.postTranslate(mCenterX-centerImW/2,HAND_END_CAP_RADIUS);
+            float secondsLeft = mCenterX-centerImW/2;
+            mSecondsDst.set(secondsLeft, HAND_END_CAP_RADIUS,
+                    secondsLeft+mColourAtlas.getScaledWidth(ROT_SECOND, handScale),
+                    HAND_END_CAP_RADIUS+mColourAtlas.getScaledHeight(ROT_SECOND, handScale));
 
             altiPaint.setTextSize(mCenterX/10);
 
+            // One pixel of travel at the tip of the longest hand, in degrees.
+            mPixelStepDegrees = (float) Math.toDegrees(1.0 / (mCenterY - BATT_RING_OFFSET));
 
+            // Everything resident is sized to the surface: drop it all, and abandon loads still
+            // running for the old size. The next frame loads what its mode needs, decoding into
+            // what was dropped where it can.
+            mAssetGeneration = mAssetLoader.nextGeneration();
+            mBitmapPool.setMaxBytes(BITMAP_POOL_SCREENS * 4L * width * height);
+            mResidency.releaseAll();
+            mResidency.setBudget(RESIDENCY_BUDGET_SCREENS * 4L * width * height);
         }
 
-        private void initGrayBackgroundBitmap() {
-            mGrayBackgroundBitmap = Bitmap.createBitmap(mBackgroundBitmap.getWidth(),
-                    mBackgroundBitmap.getHeight(), Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(mGrayBackgroundBitmap);
-            Paint grayPaint = new Paint();
-            ColorMatrix colorMatrix = new ColorMatrix();
-            colorMatrix.setSaturation(0);
-            ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
-            grayPaint.setColorFilter(filter);
-            canvas.drawBitmap(mBackgroundBitmap, 0, 0, grayPaint);
-        }
-
-        @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            UTCCalendar.setTimeInMillis(now);
-
-
-            //Log.d("MyWatchFaceService", "Pressure: " + pReader.millibar);
-
-            //pressure = pReader.millibar;
-
-            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
-                canvas.drawColor(Color.BLACK);
-            } else if (mAmbient) {
-                canvas.drawBitmap(mGrayBackgroundBitmap, 0, 0, mBackgroundPaint);
-            } else {
-                canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
-            }
-
-            /*
-             * These calculations reflect the rotation in degrees per unit of time, e.g.,
-             * 360 / 60 = 6 and 360 / 12 = 30.
-             */
-            final float seconds =
-                    (mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND) / 1000f);
-
-            float secondsRotation = seconds * 6f;
+        /**
+         * Registers every bitmap the engine holds with {@link #mResidency}, which loads them on
+         * {@link #mAssetLoader} when a mode that draws them is entered and releases them when
+         * it is left or memory runs short. Until they're loaded frames are placeholders.
+         */
+        private void registerResidents() {
+            // The budget is set once the surface size is known.
+            mResidency = new BitmapResidency(0);
+            mAmbientAtlasEntry = mResidency.register("white hands",
+                    RESIDENCY_AMBIENT | RESIDENCY_INTERACTIVE, BitmapResidency.SPRITES,
+                    new AtlasResident(mAmbientAtlas, "white-hands"));
+            mColourAtlasEntry = mResidency.register("colour hands", RESIDENCY_COLOUR,
+                    BitmapResidency.SPRITES, new AtlasResident(mColourAtlas, "colour-hands"));
+            mBackgroundEntry = mResidency.register("background",
+                    RESIDENCY_INTERACTIVE | RESIDENCY_COLOUR, BitmapResidency.DECODED,
+                    new BackgroundResident(false));
+            mResidency.register("gray background", RESIDENCY_AMBIENT,
+                    BitmapResidency.DECODED, new BackgroundResident(true));
+            mBaseLayerEntry = mResidency.register("base layer",
+                    RESIDENCY_INTERACTIVE | RESIDENCY_COLOUR, BitmapResidency.CACHE,
+                    new BitmapResidency.Resident() {
+                        @Override
+                        public long getByteCount() {
+                            return mBaseLayer == null ? 0 : mBaseLayer.getAllocationByteCount();
+                        }
 
-            //final float marsMinute=mCalendar.get(Calendar.DAY_OF_YEAR);
-            //final float marsHandOffset= now/1000/60
+                        @Override
+                        public void load(BitmapResidency.Entry entry, int ticket) {
+                            mBaseLayer = mDecoder.obtain(mWidth, mHeight,
+                                    Bitmap.Config.ARGB_8888);
+                            mBaseLayerCanvas = new Canvas(mBaseLayer);
+                            mBaseLayerValid = false;
+                            mResidency.commit(entry, ticket);
+                            mResidency.onInstalled();
+                        }
 
-            final float UTC = UTCCalendar.getTimeInMillis()/1000;
+                        @Override
+                        public void release() {
+                            mDecoder.recycle(mBaseLayer);
+                            mBaseLayer = null;
+                            mBaseLayerCanvas = null;
+                            mBaseLayerValid = false;
+                        }
+                    });
+            mAmbientFramesEntry = mResidency.register("ambient frames", RESIDENCY_AMBIENT,
+                    BitmapResidency.CACHE, new BitmapResidency.Resident() {
+                        @Override
+                        public long getByteCount() {
+                            synchronized (mAmbientFrameLock) {
+                                return mAmbientFrame == null ? 0
+                                        : mAmbientFrame.getAllocationByteCount()
+                                                + mAmbientBackFrame.getAllocationByteCount();
+                            }
+                        }
 
-            final float mercuryHourRot = (float)(24f*(UTC%(Math.pow(10,6)*5.06701))/(Math.pow(10,6)*5.06701))%12f*30f;
-            final float venusHourRot = (float)(24f*(UTC%(Math.pow(10,6)*10.0872))/(Math.pow(10,6)*10.0872))%12f*30f;
-            final float marsHourRot = (float)((24f*(UTC%88775.22)/88775.22)%12f*30f-150.3356f)%360;
-            final float jupiterHourRot = (float)(24f*(UTC%35733.312)/35733.312)%12f*30f;
-            //final float jupiterHourRot = (float)((UTC/86400f-2451545f)/86400f);
-            final float saturnHourRot = (float)(24f*(UTC%38517.12)/38517.12)%12f*30f;
-            final float uranusHourRot = (float)(24f*(UTC%62035.2)/62035.2)%12f*30f;
-            final float neptuneHourRot = (float)(24f*(UTC%57974.4)/57974.4)%12f*30f;
-            final float plutoHourRot = (float)(24f*(UTC%551880f)/551880f)%12f*30f;
+                        @Override
+                        public void load(BitmapResidency.Entry entry, int ticket) {
+                            synchronized (mAmbientFrameLock) {
+                                mAmbientFrame = mDecoder.obtain(mWidth, mHeight,
+                                        Bitmap.Config.ARGB_8888);
+                                mAmbientBackFrame = mDecoder.obtain(mWidth, mHeight,
+                                        Bitmap.Config.ARGB_8888);
+                                mAmbientFrameMinute = -1;
+                                mAmbientBackFrameMinute = -1;
+                            }
+                            mResidency.commit(entry, ticket);
+                            mResidency.onInstalled();
+                        }
 
+                        @Override
+                        public void release() {
+                            // The ambient worker may be rendering into the back frame.
+                            synchronized (mAmbientFrameLock) {
+                                mDecoder.recycle(mAmbientFrame);
+                                mDecoder.recycle(mAmbientBackFrame);
+                                mAmbientFrame = null;
+                                mAmbientBackFrame = null;
+                                mAmbientFrameMinute = -1;
+                                mAmbientBackFrameMinute = -1;
+                            }
+                        }
+                    });
+        }
 
+        /** A sprite atlas, packed at {@link #mHandScale} on the loader. */
+        private class AtlasResident implements BitmapResidency.Resident {
+            private final SpriteAtlas atlas;
+            private final String cacheName;
 
+            AtlasResident(SpriteAtlas atlas, String cacheName) {
+                this.atlas = atlas;
+                this.cacheName = cacheName;
+            }
 
-            final float moonHourRot = (float)((360*(UTC%2551442.87)/2551442.87)-84.425f)%360;
+            @Override
+            public long getByteCount() {
+                return atlas.getByteCount();
+            }
 
+            @Override
+            public void load(BitmapResidency.Entry entry, int ticket) {
+                loadAtlas(atlas, mHandScale, cacheName, entry, ticket);
+            }
 
-            final float minutesRotation = mCalendar.get(Calendar.MINUTE) * 6f;
+            @Override
+            public void release() {
+                // The ambient worker may be drawing from it.
+                synchronized (mAmbientFrameLock) {
+                    atlas.release();
+                }
+            }
+        }
 
-            final float hourHandOffset = mCalendar.get(Calendar.MINUTE) / 2f;
-            final float hoursRotation = (mCalendar.get(Calendar.HOUR) * 30) + hourHandOffset;
+        /** The background scaled to the surface, in colour or gray. */
+        private class BackgroundResident implements BitmapResidency.Resident {
+            private final boolean gray;
 
-            if(pSensor==true) {
-                Log.d("MyWatchFaceService","minutes"+(int)minutesRotation);
+            BackgroundResident(boolean gray) {
+                this.gray = gray;
+            }
 
-                if((minutesRotation%36==0)&&(minuteFlag==true)) {
-                    Log.d("MyWatchFaceService","minute");
-                    mSensorManager.registerListener(pReader, mPressure, SensorManager.SENSOR_DELAY_FASTEST);
+            @Override
+            public long getByteCount() {
+                Bitmap bitmap = gray ? mGrayBackgroundBitmap : mBackgroundBitmap;
+                return bitmap == null ? 0 : bitmap.getAllocationByteCount();
+            }
 
-                    minuteFlag = false;
+            @Override
+            public void load(BitmapResidency.Entry entry, int ticket) {
+                loadBackground(gray, entry, ticket);
+            }
 
-                   // mSensorManager.unregisterListener(pReader);
+            @Override
+            public void release() {
+                // The ambient worker may be drawing the gray background.
+                synchronized (mAmbientFrameLock) {
+                    if (gray) {
+                        mDecoder.recycle(mGrayBackgroundBitmap);
+                        mGrayBackgroundBitmap = null;
+                    } else {
+                        mDecoder.recycle(mBackgroundBitmap);
+                        mBackgroundBitmap = null;
+                    }
+                }
+            }
+        }
 
+        /**
+         * Decodes the background at the surface width on the loader, grayed if asked, or maps it
+         * in from {@link #mDerivedCache} if it was made for this surface before. It's an opaque
+         * JPEG, so RGB_565 loses nothing.
+         */
+        private void loadBackground(final boolean gray, final BitmapResidency.Entry entry,
+                final int ticket) {
+            final int width = mWidth;
+            final String cacheName = derivedName(gray ? "gray-background" : "background");
+            final Bitmap[] result = new Bitmap[1];
+            mAssetLoader.runAll(mAssetGeneration, new Runnable[] {
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            result[0] = mDerivedCache.load(cacheName);
+                            if (result[0] != null) {
+                                return;
+                            }
+                            Bitmap scaled = mDecoder.decode(R.drawable.custom_background_black,
+                                    width, Bitmap.Config.RGB_565);
+                            if (gray) {
+                                result[0] = createGrayBitmap(scaled);
+                                mDecoder.recycle(scaled);
+                            } else {
+                                result[0] = scaled;
+                            }
+                            mDerivedCache.store(cacheName, result[0]);
+                        }
+                    }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    if (!mResidency.commit(entry, ticket)) {
+                        mDecoder.recycle(result[0]);
+                        return;
+                    }
+                    synchronized (mAmbientFrameLock) {
+                        if (gray) {
+                            mGrayBackgroundBitmap = result[0];
+                        } else {
+                            mBackgroundBitmap = result[0];
+                        }
+                    }
+                    onAssetLoaded();
                 }
-                if(minutesRotation%36!=0){
-                    minuteFlag=true;
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    mDecoder.recycle(result[0]);
                 }
-                if(pReader.time!=lastTime){
-                    pressure=pReader.millibar;
-                    pressureBuffer.addFirst(pressure);
-                    Log.d("MyWatchFaceService","pressure"+pressure);
+            });
+        }
 
-                    if(pressureBuffer.size()>60){
-                        pressureBuffer.pollLast();
+        /**
+         * Packs {@code atlas} at {@code scale} on the loader: straight from
+         * {@link #mDerivedCache} if it was packed for this surface before, otherwise one sprite
+         * per task, storing the result for next time.
+         */
+        private void loadAtlas(final SpriteAtlas atlas, float scale, String name,
+                final BitmapResidency.Entry entry, final int ticket) {
+            final SpriteAtlas.Packing packing = atlas.layout(scale);
+            final String cacheName = derivedName(name);
+            final boolean[] hit = new boolean[1];
+            final Runnable install = new Runnable() {
+                @Override
+                public void run() {
+                    if (!mResidency.commit(entry, ticket)) {
+                        packing.recycle();
+                        return;
                     }
-                    Log.d("MyWatchFaceService","pressure"+pressure);
-
-
-                    mSensorManager.unregisterListener(pReader);
-                    lastTime=pReader.time;
-                    Log.d("MyWatchFaceService","unreg");
+                    // The ambient worker may be drawing from the old atlas.
+                    synchronized (mAmbientFrameLock) {
+                        atlas.install(packing);
+                    }
+                    onAssetLoaded();
+                }
+            };
+            final Runnable discard = new Runnable() {
+                @Override
+                public void run() {
+                    packing.recycle();
                 }
+            };
+            mAssetLoader.runAll(mAssetGeneration, new Runnable[] {
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            hit[0] = mDerivedCache.loadInto(cacheName, packing.getBitmap());
+                        }
+                    }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    if (hit[0]) {
+                        install.run();
+                    } else {
+                        decodeAtlas(atlas, packing, cacheName, install, discard);
+                    }
+                }
+            }, discard);
+        }
+
+        /* Decodes every sprite of packing in parallel; the last to finish stores the atlas. */
+        private void decodeAtlas(final SpriteAtlas atlas, final SpriteAtlas.Packing packing,
+                final String cacheName, Runnable install, Runnable discard) {
+            Runnable[] tasks = new Runnable[atlas.getSpriteCount()];
+            final AtomicInteger remaining = new AtomicInteger(tasks.length);
+            for (int i = 0; i < tasks.length; i++) {
+                final int sprite = i;
+                tasks[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        atlas.decodeSprite(packing, sprite);
+                        if (remaining.decrementAndGet() == 0) {
+                            mDerivedCache.store(cacheName, packing.getBitmap());
+                        }
+                    }
+                };
             }
+            mAssetLoader.runAll(mAssetGeneration, tasks, install, discard);
+        }
 
-            handState=2;
-           // Log.d("MyWatchFaceService","ambientMode" +mAmbient);
+        /* The cache name of what's derived as name for the current surface. */
+        private String derivedName(String name) {
+            return name + "-" + mWidth + "x" + mHeight;
+        }
 
-            switch(handState) {
+        private void onAssetLoaded() {
+            mResidency.onInstalled();
+            Log.d("MyWatchFaceService", "Bitmaps resident: " + mResidency.getByteCount()
+                    + " bytes, pooled: " + mBitmapPool.getByteCount() + " bytes, derived cache: "
+                    + mDerivedCache.getHits() + " hits, " + mDerivedCache.getMisses() + " misses");
+            invalidateAmbientFrames();
+            mBaseLayerValid = false;
+            invalidate();
+        }
 
-               case 1:
-                    // save the canvas state before we begin to rotate it
-                    canvas.save();
-                    if((pSensor==true)&&(pressureBuffer.size()>0)) {
-                        int altitude = (int) ((1 - Math.pow(pressureBuffer.peekFirst() / 1013.25, 0.190284)) * 4430);
-                        //Log.d("MyWatchFaceService", "millibar: " + pReader.millibar);
-                        canvas.drawText((10 * altitude + "m"), 1.6f * mCenterX, mCenterY+mCenterX/40, altiPaint);
+        /** Releases bitmaps as the system asks; whatever is needed reloads on the next frame. */
+        void trimMemory(int level) {
+            mResidency.onTrimMemory(level);
+            // The pool is only a shortcut for the next decode.
+            mBitmapPool.clear();
+        }
 
-                        float pressureChange=4*(pressureBuffer.peekFirst()-pressureBuffer.peekLast());
-                        Log.d("MyWatchFaceService", "Pressure: " + pressureChange);
+        private Bitmap createGrayBitmap(Bitmap source) {
+            Bitmap gray = mDecoder.obtain(source.getWidth(), source.getHeight(),
+                    source.getConfig());
+            Canvas canvas = new Canvas(gray);
+            Paint grayPaint = new Paint();
+            // RGB_565 has a finer green channel; dithering hides the tint that leaves on grays.
+            grayPaint.setDither(true);
+            ColorMatrix colorMatrix = new ColorMatrix();
+            colorMatrix.setSaturation(0);
+            ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
+            grayPaint.setColorFilter(filter);
+            canvas.drawBitmap(source, 0, 0, grayPaint);
+            return gray;
+        }
 
-                        if(pressureChange>180){
-                            pressureChange=180;
-                        }
-                        if(pressureChange<-180){
-                            pressureChange=-180;
-                        }
-                        if(pressureChange>0){
-                            canvas.drawArc(BATT_RING_OFFSET,BATT_RING_OFFSET,mHeight-BATT_RING_OFFSET,mWidth-BATT_RING_OFFSET,pressureChange+270,-pressureChange,false,goodWeatherPaint);
-                        }else{
-                            canvas.drawArc(BATT_RING_OFFSET,BATT_RING_OFFSET,mHeight-BATT_RING_OFFSET,mWidth-BATT_RING_OFFSET,270f,pressureChange,false,badWeatherPaint);
-                        }
-                    }
+        /**
+         * Opens the on-disk pressure log. Null if it can't be opened, in which case the history
+         * starts empty as it used to.
+         */
+        private PressureLog openPressureLog() {
+            try {
+                return new PressureLog(new File(getFilesDir(), PressureLog.FILE_NAME),
+                        PressureLog.MAX_RECORDS, System.currentTimeMillis());
+            } catch (IOException e) {
+                Log.w("MyWatchFaceService", "No pressure log, history won't persist", e);
+                return null;
+            }
+        }
 
-                   canvas.rotate(marsHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(marsHourHandColour, transformation, mHandPaint);
+        private void startPressureRecording(Sensor sensor) {
+            try {
+                mPressurePipeline.setRecorder(new SensorEventRecorder(
+                        new File(getFilesDir(), PRESSURE_RECORDING_FILE), sensor, 1));
+            } catch (IOException e) {
+                Log.w("MyWatchFaceService", "Can't record pressure", e);
+            }
+        }
 
-                    canvas.rotate(mercuryHourRot - marsHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(mercuryHourHandColour, transformation, mHandPaint);
+        /**
+         * Restores the last {@link #PRESSURE_RESTORE_MS} of the log into {@link #mPressureTrend}
+         * and as much as the tiers hold into the pipeline's tiers, so the trend arc and the
+         * longer tendencies survive restarts. Must run before the pipeline starts.
+         */
+        private void restorePressure(PressureLog log) {
+            if (log == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            try {
+                pressureSamples += log.restore(mPressureTrend, now - PRESSURE_RESTORE_MS);
+                PressureTiers tiers = mPressurePipeline.getTiers();
+                log.restore(tiers, now - tiers.getSpanMs());
+            } catch (IOException e) {
+                Log.w("MyWatchFaceService", "Couldn't restore pressure history", e);
+            }
+        }
 
-                    canvas.rotate(venusHourRot - mercuryHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(venusHourHandColour, transformation, mHandPaint);
+        /**
+         * Memory-maps the {@link EphemerisTable#ASSET_NAME} asset, which is stored uncompressed in
+         * the APK. Returns null if it is missing or unreadable, in which case angles are computed
+         * by {@link Ephemeris}.
+         */
+        private EphemerisTable openEphemerisTable() {
+            AssetFileDescriptor fd = null;
+            FileInputStream in = null;
+            try {
+                fd = getAssets().openFd(EphemerisTable.ASSET_NAME);
+                in = fd.createInputStream();
+                // The mapping stays valid after the channel is closed.
+                MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        fd.getStartOffset(), fd.getLength());
+                return new EphemerisTable(buffer);
+            } catch (IOException e) {
+                Log.w("MyWatchFaceService", "No ephemeris table, computing angles", e);
+                return null;
+            } finally {
+                try {
+                    if (in != null) {
+                        in.close();
+                    }
+                    if (fd != null) {
+                        fd.close();
+                    }
+                } catch (IOException e) {
+                    // Nothing to do, the mapping is already made or we have fallen back.
+                }
+            }
+        }
 
-                    canvas.rotate(jupiterHourRot - venusHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(jupiterHourHandColour, transformation, mHandPaint);
+        /**
+         * Drops both cached ambient frames. Called whenever something baked into them changes:
+         * surface size, time zone or the low-bit/burn-in display properties.
+         */
+        private void invalidateAmbientFrames() {
+            synchronized (mAmbientFrameLock) {
+                mAmbientFrameMinute = -1;
+                mAmbientBackFrameMinute = -1;
+                mAmbientRenderCalendar.setTimeZone(TimeZone.getDefault());
+            }
+        }
 
-                    canvas.rotate(saturnHourRot - jupiterHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(saturnHourHandColour, transformation, mHandPaint);
+        /**
+         * Fills {@code out} with the rotation in degrees of every hand at the time held by
+         * {@code calendar}, correcting the body hands with {@code orbits}.
+         */
+        private void computeRotations(Calendar calendar, OrbitModel orbits, float[] out) {
+            /*
+             * These calculations reflect the rotation in degrees per unit of time, e.g.,
+             * 360 / 60 = 6 and 360 / 12 = 30.
+             */
+            final float seconds =
+                    (calendar.get(Calendar.SECOND) + calendar.get(Calendar.MILLISECOND) / 1000f);
 
-                    canvas.rotate(uranusHourRot - saturnHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(uranusHourHandColour, transformation, mHandPaint);
+            out[ROT_SECOND] = seconds * 6f;
 
-                    canvas.rotate(neptuneHourRot - uranusHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(neptuneHourHandColour, transformation, mHandPaint);
+            long timeMs = calendar.getTimeInMillis();
+            EphemerisTable table = mEphemerisTable;
+            if (table != null && table.covers(timeMs)) {
+                table.bodyRotations(timeMs, out);
+            } else {
+                Ephemeris.bodyRotations(timeMs, out);
+            }
+            orbits.applyCorrections(timeMs, out);
 
-                   // canvas.rotate(plutoHourRot - neptuneHourRot, mCenterX, mCenterY);
-                    //canvas.drawBitmap(plutoHourHandColour, transformation, mHandPaint);
+            out[ROT_MINUTE] = calendar.get(Calendar.MINUTE) * 6f;
 
-                    canvas.rotate(moonHourRot - neptuneHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(moonHandColour, transformation, mHandPaint);
+            final float hourHandOffset = calendar.get(Calendar.MINUTE) / 2f;
+            out[ROT_HOUR] = (calendar.get(Calendar.HOUR) * 30) + hourHandOffset;
+        }
 
-                    canvas.rotate(minutesRotation - moonHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(minuteHandColour, transformation, mHandPaint);
+        /**
+         * Renders the complete ambient face for {@code timeMs} into {@code frame}. Runs on either
+         * the UI thread or the ambient worker, so everything it touches is passed in or read-only
+         * while the surface is unchanged.
+         */
+        private void renderAmbientFrame(Bitmap frame, long timeMs, Calendar calendar,
+                float[] rotations, Paint handPaint) {
+            calendar.setTimeInMillis(timeMs);
+            computeRotations(calendar, mAmbientRenderOrbits, rotations);
 
-                    canvas.rotate(hoursRotation - minutesRotation, mCenterX, mCenterY);
-                    canvas.drawBitmap(earthHourHandColour, transformation, mHandPaint);
+            Canvas canvas = new Canvas(frame);
+            if (mLowBitAmbient || mBurnInProtection || mGrayBackgroundBitmap == null) {
+                canvas.drawColor(Color.BLACK);
+            } else {
+                canvas.drawBitmap(mGrayBackgroundBitmap, 0, 0, mBackgroundPaint);
+            }
+            drawAmbientHands(canvas, rotations, handPaint);
+        }
 
-                    canvas.drawBitmap(centerImColour, centerTransform, mHandPaint);
+        /**
+         * Blits the cached ambient frame for the current minute, rendering it first if neither
+         * buffer already holds it, and queues the next minute's frame on the worker.
+         */
+        private void drawAmbientFrame(Canvas canvas, long now) {
+            long minute = now / AMBIENT_FRAME_MS;
+            synchronized (mAmbientFrameLock) {
+                if (mAmbientFrameMinute != minute && mAmbientBackFrameMinute == minute) {
+                    Bitmap front = mAmbientFrame;
+                    mAmbientFrame = mAmbientBackFrame;
+                    mAmbientBackFrame = front;
+                    mAmbientBackFrameMinute = mAmbientFrameMinute;
+                    mAmbientFrameMinute = minute;
+                }
+                if (mAmbientFrameMinute != minute) {
+                    renderAmbientFrame(mAmbientFrame, now, mAmbientRenderCalendar,
+                            mAmbientRenderRotations, mAmbientRenderPaint);
+                    mAmbientFrameMinute = minute;
+                }
+                canvas.drawBitmap(mAmbientFrame, 0, 0, null);
+            }
 
+            mAmbientPrerenderMinute = minute + 1;
+            mAmbientRenderHandler.removeCallbacks(mAmbientPrerender);
+            mAmbientRenderHandler.post(mAmbientPrerender);
+        }
 
-                   canvas.rotate(secondsRotation - hoursRotation, mCenterX, mCenterY);
-                    canvas.drawBitmap(secondsHandColour, secondsTransform, mHandPaint);
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            long start = System.nanoTime();
+            boolean complete = drawFace(canvas);
+            long end = System.nanoTime();
+            if (mSweepRunning) {
+                mGovernor.recordDraw(end - start);
+            }
+            // Logged once each per engine; the measureStartup Gradle task collects them.
+            if (mTimeToFirstFrameMs < 0) {
+                mTimeToFirstFrameMs = (end - mStartNanos) / 1000000L;
+                Log.d("MyWatchFaceService", "Time to first frame " + mTimeToFirstFrameMs + " ms");
+            }
+            if (complete && mTimeToFullFrameMs < 0) {
+                mTimeToFullFrameMs = (end - mStartNanos) / 1000000L;
+                Log.d("MyWatchFaceService", "Time to full frame " + mTimeToFullFrameMs + " ms");
+            }
+        }
 
-                    canvas.restore();
+        /** Timer ticks that found the face changed and invalidated it. */
+        int getFramesExecuted() {
+            return mFramesExecuted;
+        }
 
-                   float batLevel = (float)3.6*bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-                   canvas.drawArc(BATT_RING_OFFSET, BATT_RING_OFFSET, mHeight - BATT_RING_OFFSET, mWidth - BATT_RING_OFFSET, 270f, batLevel, false, mHandPaint);
+        /** Timer ticks that found nothing to redraw. */
+        int getFramesSkipped() {
+            return mFramesSkipped;
+        }
 
-                    break;
+        /** Interactive frames that had to redraw the base layer. */
+        int getBaseLayerRebuilds() {
+            return mBaseLayerRebuilds;
+        }
 
+        /** Interactive frames that drew the cached base layer as it was. */
+        int getBaseLayerReuses() {
+            return mBaseLayerReuses;
+        }
 
-                case 2:
+        /**
+         * Background, if loaded yet, and plain hour and minute hands; drawn until the sprites
+         * for the current hand set are loaded.
+         */
+        private void drawPlaceholder(Canvas canvas) {
+            if (mBackgroundBitmap != null && !mAmbient) {
+                canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
+            } else {
+                canvas.drawColor(Color.BLACK);
+            }
+            drawPlaceholderHand(canvas, mRotations[ROT_HOUR], 0.5f);
+            drawPlaceholderHand(canvas, mRotations[ROT_MINUTE], 0.8f);
+        }
 
+        private void drawPlaceholderHand(Canvas canvas, float rotation, float length) {
+            double radians = Math.toRadians(rotation);
+            float radius = length * (mCenterY - HAND_END_CAP_RADIUS);
+            canvas.drawLine(mCenterX, mCenterY,
+                    mCenterX + (float) Math.sin(radians) * radius,
+                    mCenterY - (float) Math.cos(radians) * radius, mHandPaint);
+        }
 
+        /**
+         * Draws the face, or a placeholder while its sprites load.
+         *
+         * @return whether the full face was drawn
+         */
+        private boolean drawFace(Canvas canvas) {
+            long now = System.currentTimeMillis();
+            mCalendar.setTimeInMillis(now);
 
-                    canvas.save();
+            if (mAmbient) {
+                mResidency.setMode(RESIDENCY_AMBIENT);
+                if (!mAmbientAtlasEntry.isResident() || !mAmbientFramesEntry.isResident()) {
+                    computeRotations(mCalendar, mOrbits, mRotations);
+                    drawPlaceholder(canvas);
+                    return false;
+                }
+                // The frame was rendered with its own rotations; this is the whole draw.
+                drawAmbientFrame(canvas, now);
+                return true;
+            }
 
-                    canvas.rotate(marsHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(marsHourHandAmb, transformation, mHandPaint);
+            computeRotations(mCalendar, mOrbits, mRotations);
 
-                    canvas.rotate(mercuryHourRot - marsHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(mercuryHourHandAmb, transformation, mHandPaint);
+            //Log.d("MyWatchFaceService", "Pressure: " + pReader.millibar);
 
-                    canvas.rotate(venusHourRot - mercuryHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(venusHourHandAmb, transformation, mHandPaint);
+            //pressure = pReader.millibar;
 
-                    canvas.rotate(jupiterHourRot - venusHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(jupiterHourHandAmb, transformation, mHandPaint);
+            handState=2;
+           // Log.d("MyWatchFaceService","ambientMode" +mAmbient);
 
-                    canvas.rotate(saturnHourRot - jupiterHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(saturnHourHandAmb, transformation, mHandPaint);
+            mResidency.setMode(handState == 1 ? RESIDENCY_COLOUR : RESIDENCY_INTERACTIVE);
+            BitmapResidency.Entry handEntry =
+                    handState == 1 ? mColourAtlasEntry : mAmbientAtlasEntry;
+            if (!mBackgroundEntry.isResident() || !handEntry.isResident()
+                    || !mBaseLayerEntry.isResident()) {
+                drawPlaceholder(canvas);
+                mBaseLayerValid = false;
+                return false;
+            }
 
-                    canvas.rotate(uranusHourRot - saturnHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(uranusHourHandAmb, transformation, mHandPaint);
+            if (updateBaseLayerKeys(mBattery.getLevel())) {
+                rebuildBaseLayer();
+                mBaseLayerRebuilds++;
+            } else {
+                mBaseLayerReuses++;
+            }
+            canvas.drawBitmap(mBaseLayer, 0, 0, null);
+
+            mDrawnSecond = mCalendar.get(Calendar.SECOND);
+            if (drawsSecondsHand()) {
+                SpriteAtlas atlas = handState == 1 ? mColourAtlas : mAmbientAtlas;
+                canvas.save();
+                canvas.rotate(mRotations[ROT_SECOND], mCenterX, mCenterY);
+                atlas.draw(canvas, ROT_SECOND, mSecondsDst, mHandPaint);
+                canvas.restore();
+            }
+            return true;
+        }
 
-                    canvas.rotate(neptuneHourRot - uranusHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(neptuneHourHandAmb, transformation, mHandPaint);
+        /**
+         * Moves samples published by {@link #mPressurePipeline} into the pressure trend. Runs
+         * on the main thread, so onDraw only ever sees a settled history.
+         */
+        private void drainPressureSamples() {
+            int count = mPressurePipeline.drain(mPressureTrend);
+            if (count > 0) {
+                pressure = mPressureTrend.getHistory().newest();
+                pressureSamples += count;
+                Log.d("MyWatchFaceService","pressure"+pressure);
+            }
+            // The device is awake for the batch; let other sensors due soon share the wake-up.
+            mSensorHub.onWakeup();
+            PressureTiers tiers = mPressurePipeline.getTiers();
+            long now = System.currentTimeMillis();
+            Log.d("MyWatchFaceService", "Tendency 3h: " + tiers.change(now - PRESSURE_3H_MS, now)
+                    + " 24h: " + tiers.change(now - PRESSURE_24H_MS, now)
+                    + " 7d: " + tiers.change(now - tiers.getSpanMs(), now));
+            if (!mAmbient) {
+                invalidate();
+            }
+        }
 
-                   // canvas.rotate(plutoHourRot - neptuneHourRot, mCenterX, mCenterY);
-                    //canvas.drawBitmap(plutoHourHandAmb, transformation, mHandPaint);
+        /**
+         * Whether a frame drawn at {@code now} would differ from the last one drawn: any hand
+         * has moved by a pixel, the seconds hand (if shown) has ticked, or the battery, pressure
+         * or hand set has changed. Always leaves the rotations at {@code now} in
+         * {@link #mScheduleRotations} for {@link #nextFrameDelayMs}.
+         */
+        private boolean frameChanged(long now) {
+            mScheduleCalendar.setTimeInMillis(now);
+            computeRotations(mScheduleCalendar, mOrbits, mScheduleRotations);
+            if (!mBaseLayerValid
+                    || mBattery.getLevel() != mBaseLayerBattery
+                    || pressureSamples != mBaseLayerPressureSamples
+                    || handState != mBaseLayerHandState) {
+                return true;
+            }
+            if (drawsSecondsHand() && mScheduleCalendar.get(Calendar.SECOND) != mDrawnSecond) {
+                return true;
+            }
+            for (int i = 0; i < ROT_SECOND; i++) {
+                if (FrameScheduler.quantize(mScheduleRotations[i], mPixelStepDegrees)
+                        != mBaseLayerKeys[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-                    canvas.rotate(moonHourRot - neptuneHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(moonHandAmb, transformation, mHandPaint);
+        /**
+         * Delay from {@code now} until the earliest of: the next minute (minute and hour hands,
+         * orbit corrections), the next second if the seconds hand is shown, and the next pixel
+         * step of any visible body hand. Battery and pressure changes invalidate directly.
+         * Expects {@link #mScheduleRotations} to hold the rotations at {@code now}.
+         */
+        private long nextFrameDelayMs(long now) {
+            long delay = FrameScheduler.millisUntilNextBoundary(now, AMBIENT_FRAME_MS);
+            if (drawsSecondsHand() || !mBaseLayerValid) {
+                delay = Math.min(delay,
+                        FrameScheduler.millisUntilNextBoundary(now, INTERACTIVE_UPDATE_RATE_MS));
+            }
+            for (int hand : HAND_DRAW_ORDER) {
+                if (hand < Ephemeris.BODY_COUNT) {
+                    delay = Math.min(delay, FrameScheduler.millisUntilNextStep(
+                            mScheduleRotations[hand], Ephemeris.degreesPerMilli(hand),
+                            mPixelStepDegrees));
+                }
+            }
+            return delay;
+        }
 
-                    canvas.rotate(minutesRotation - moonHourRot, mCenterX, mCenterY);
-                    canvas.drawBitmap(minuteHandAmb, transformation, mHandPaint);
+        /**
+         * Compares the current frame against what is baked into {@link #mBaseLayer} and records
+         * the new state. Hands are compared by their rotation quantized to one pixel of travel
+         * at the rim, so slow bodies only cost a rebuild when they visibly move.
+         *
+         * @return whether the base layer needs to be rebuilt
+         */
+        private boolean updateBaseLayerKeys(int batteryLevel) {
+            boolean stale = !mBaseLayerValid
+                    || batteryLevel != mBaseLayerBattery
+                    || pressureSamples != mBaseLayerPressureSamples
+                    || handState != mBaseLayerHandState;
+            for (int i = 0; i < ROT_SECOND; i++) {
+                int key = FrameScheduler.quantize(mRotations[i], mPixelStepDegrees);
+                if (key != mBaseLayerKeys[i]) {
+                    mBaseLayerKeys[i] = key;
+                    stale = true;
+                }
+            }
+            mBaseLayerBattery = batteryLevel;
+            mBaseLayerPressureSamples = pressureSamples;
+            mBaseLayerHandState = handState;
+            return stale;
+        }
 
-                    canvas.rotate(hoursRotation - minutesRotation, mCenterX, mCenterY);
-                    canvas.drawBitmap(earthHourHandAmb, transformation, mHandPaint);
+        /**
+         * Redraws everything except the seconds hand into {@link #mBaseLayer}.
+         */
+        private void rebuildBaseLayer() {
+            Canvas canvas = mBaseLayerCanvas;
+            canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
 
-                    canvas.drawBitmap(centerImAmb, centerTransform, mHandPaint);
+            switch(handState) {
+                case 1:
+                    drawColourBase(canvas, mRotations);
+                    break;
 
-                    canvas.restore();
+                case 2:
+                    drawAmbientHands(canvas, mRotations, mHandPaint);
                     break;
 
                 default:
                     break;
+            }
+            mBaseLayerValid = true;
+        }
 
+        /**
+         * Draws the pressure ring, altitude text, colour body hands, center image and battery
+         * ring. The seconds hand is composited separately on top.
+         */
+        private void drawColourBase(Canvas canvas, float[] rotations) {
+            // save the canvas state before we begin to rotate it
+            canvas.save();
+            if((pSensor==true)&&(mPressureTrend.hasEstimate())) {
+                int altitude = mPressureTrend.getAltitudeMetres();
+                //Log.d("MyWatchFaceService", "millibar: " + pReader.millibar);
+                canvas.drawText((altitude + "m"), 1.6f * mCenterX, mCenterY+mCenterX/40, altiPaint);
+
+                // Filtered change over the trend span, so one noisy sample can't swing the arc.
+                float pressureChange=mPressureTrend.getArcDegrees();
+                Log.d("MyWatchFaceService", "Pressure: " + pressureChange);
+
+                if(pressureChange>0){
+                    canvas.drawArc(BATT_RING_OFFSET,BATT_RING_OFFSET,mHeight-BATT_RING_OFFSET,mWidth-BATT_RING_OFFSET,pressureChange+270,-pressureChange,false,goodWeatherPaint);
+                }else{
+                    canvas.drawArc(BATT_RING_OFFSET,BATT_RING_OFFSET,mHeight-BATT_RING_OFFSET,mWidth-BATT_RING_OFFSET,270f,pressureChange,false,badWeatherPaint);
+                }
             }
+
+            drawHands(canvas, mColourAtlas, rotations, mHandPaint);
+
+            canvas.restore();
+
+            canvas.drawArc(BATT_RING_OFFSET, BATT_RING_OFFSET, mHeight - BATT_RING_OFFSET, mWidth - BATT_RING_OFFSET, 270f, mBattery.getSweep(), false, mHandPaint);
+        }
+
+        /**
+         * Draws the ambient hand set rotated to {@code rotations}.
+         */
+        private void drawAmbientHands(Canvas canvas, float[] rotations, Paint handPaint) {
+            canvas.save();
+            drawHands(canvas, mAmbientAtlas, rotations, handPaint);
+            canvas.restore();
+        }
+
+        /**
+         * Draws every body hand from {@code atlas} in {@link #HAND_DRAW_ORDER}, followed by the
+         * center image. Leaves the canvas rotated to the last hand.
+         */
+        private void drawHands(Canvas canvas, SpriteAtlas atlas, float[] rotations, Paint handPaint) {
+            float rotated = 0;
+            for (int hand : HAND_DRAW_ORDER) {
+                canvas.rotate(rotations[hand] - rotated, mCenterX, mCenterY);
+                rotated = rotations[hand];
+                atlas.draw(canvas, hand, mHandDst, handPaint);
+            }
+            atlas.draw(canvas, SPRITE_CENTER, mCenterDst, handPaint);
         }
 
 
@@ -662,6 +1516,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                 registerReceiver();
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                invalidateAmbientFrames();
                 invalidate();
             } else {
                 unregisterReceiver();
@@ -682,6 +1537,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             MyWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+            mBattery.register(MyWatchFaceService.this);
         }
 
         private void unregisterReceiver() {
@@ -690,15 +1546,32 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             MyWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+            mBattery.unregister(MyWatchFaceService.this);
         }
 
         private void updateTimer() {
             mUpdateTimeHandler.removeMessages(R.id.message_update);
+            if (shouldSweepBeRunning()) {
+                if (!mSweepRunning) {
+                    mSweepRunning = true;
+                    mGovernor.reset();
+                    Choreographer.getInstance().postFrameCallback(mSweepCallback);
+                }
+                return;
+            }
+            stopSweep();
             if (shouldTimerBeRunning()) {
                 mUpdateTimeHandler.sendEmptyMessage(R.id.message_update);
             }
         }
 
+        private void stopSweep() {
+            if (mSweepRunning) {
+                mSweepRunning = false;
+                Choreographer.getInstance().removeFrameCallback(mSweepCallback);
+            }
+        }
+
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
          * should only run when we're visible and in interactive mode.
@@ -706,6 +1579,24 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
         }
+
+        /**
+         * Returns whether the vsync loop should be driving frames instead of the timer: the sweep
+         * is on with a seconds hand to draw, we're visible and interactive, and the governor
+         * hasn't dropped to 1 fps.
+         */
+        private boolean shouldSweepBeRunning() {
+            return mSweepSeconds && drawsSecondsHand() && shouldTimerBeRunning()
+                    && !mGovernor.isFallenBack();
+        }
+
+        /**
+         * Whether interactive frames show a seconds hand: the colour hand set has one, and the
+         * white set shows one while the sweep is on.
+         */
+        private boolean drawsSecondsHand() {
+            return !mAmbient && (handState == 1 || mSweepSeconds);
+        }
     }
 }
 
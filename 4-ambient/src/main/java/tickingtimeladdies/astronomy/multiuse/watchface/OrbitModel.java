@@ -0,0 +1,124 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Corrects the mean body hand angles from {@link Ephemeris} or {@link EphemerisTable} for where
+ * the bodies really are on their orbits.
+ *
+ * <p>The planet hands run at each planet's mean solar day, so the correction is that planet's
+ * equation of time from orbital eccentricity: the true sun runs ahead of the mean sun by the
+ * equation of center, which holds local noon back by the same angle (or brings it forward on a
+ * retrograde rotator). Mercury's hand runs on its sidereal rotation and takes no correction. The
+ * moon hand tracks the phase, so it is corrected by the moon's equation of center less the
+ * sun's.
+ *
+ * <p>Corrections change by far less than a pixel in a minute, so they are solved once per minute
+ * and added to the per-frame mean angles. Not thread-safe; each caller keeps its own instance.
+ */
+public final class OrbitModel {
+
+    private static final long CACHE_MILLIS = 60000;
+
+    /* Hand degrees per degree of solar hour angle: the dial shows 12 hours. */
+    private static final double HAND_PER_HOUR_ANGLE = 2.0;
+
+    /*
+     * Mean elements at 2000 Jan 0.0: mean anomaly (deg), mean motion (deg/day), eccentricity.
+     * The sun's is Earth's orbit seen from Earth.
+     */
+    private final KeplerOrbit sun = new KeplerOrbit(356.0470, 0.9856002585, 0.016709);
+    private final KeplerOrbit moon = new KeplerOrbit(115.3654, 13.0649929509, 0.054900);
+    private final KeplerOrbit[] planets = new KeplerOrbit[Ephemeris.BODY_COUNT];
+
+    /* +1 for prograde rotation, -1 for retrograde. */
+    private final int[] rotationSense = new int[Ephemeris.BODY_COUNT];
+
+    private final float[] corrections = new float[Ephemeris.BODY_COUNT];
+    private long cachedMinute = Long.MIN_VALUE;
+    private long hits;
+    private long misses;
+
+    public OrbitModel() {
+        planets[Ephemeris.VENUS] = new KeplerOrbit(48.0052, 1.6021302244, 0.006773);
+        planets[Ephemeris.MARS] = new KeplerOrbit(18.6021, 0.5240207766, 0.093405);
+        planets[Ephemeris.JUPITER] = new KeplerOrbit(19.8950, 0.0830853001, 0.048498);
+        planets[Ephemeris.SATURN] = new KeplerOrbit(316.9670, 0.0334442282, 0.055546);
+        planets[Ephemeris.URANUS] = new KeplerOrbit(142.5905, 0.011725806, 0.047318);
+        planets[Ephemeris.NEPTUNE] = new KeplerOrbit(260.2471, 0.005995147, 0.008606);
+        planets[Ephemeris.PLUTO] = new KeplerOrbit(14.882, 0.003964, 0.2488);
+
+        for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+            rotationSense[i] = 1;
+        }
+        rotationSense[Ephemeris.VENUS] = -1;
+        rotationSense[Ephemeris.URANUS] = -1;
+        rotationSense[Ephemeris.PLUTO] = -1;
+    }
+
+    /**
+     * Adds the orbital correction for {@code epochMillis} to the mean body angles in
+     * {@code rotations}, indexed by the {@link Ephemeris} body constants, keeping them in
+     * [0, 360).
+     */
+    public void applyCorrections(long epochMillis, float[] rotations) {
+        long minute = epochMillis / CACHE_MILLIS;
+        if (minute != cachedMinute) {
+            solve(minute * CACHE_MILLIS);
+            cachedMinute = minute;
+            misses++;
+        } else {
+            hits++;
+        }
+        for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+            float rotation = rotations[i] + corrections[i];
+            if (rotation < 0) {
+                rotation += 360f;
+            } else if (rotation >= 360f) {
+                rotation -= 360f;
+            }
+            rotations[i] = rotation;
+        }
+    }
+
+    private void solve(long epochMillis) {
+        double sunCenter = sun.equationOfCenter(epochMillis);
+        for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+            if (planets[i] != null) {
+                corrections[i] = (float) (-rotationSense[i] * HAND_PER_HOUR_ANGLE
+                        * planets[i].equationOfCenter(epochMillis));
+            }
+        }
+        corrections[Ephemeris.MOON] = (float) (moon.equationOfCenter(epochMillis) - sunCenter);
+    }
+
+    /** Calls to {@link #applyCorrections} answered from the per-minute cache. */
+    public long getCacheHits() {
+        return hits;
+    }
+
+    /** Calls to {@link #applyCorrections} that had to solve the orbits. */
+    public long getCacheMisses() {
+        return misses;
+    }
+
+    /** Newton steps taken by every orbit in this model since construction. */
+    public long getSolverIterations() {
+        long total = sun.getIterations() + moon.getIterations();
+        for (KeplerOrbit planet : planets) {
+            if (planet != null) {
+                total += planet.getIterations();
+            }
+        }
+        return total;
+    }
+
+    /** Kepler equation solves performed by every orbit in this model since construction. */
+    public long getSolves() {
+        long total = sun.getSolves() + moon.getSolves();
+        for (KeplerOrbit planet : planets) {
+            if (planet != null) {
+                total += planet.getSolves();
+            }
+        }
+        return total;
+    }
+}
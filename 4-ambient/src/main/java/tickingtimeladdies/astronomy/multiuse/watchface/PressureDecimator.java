@@ -0,0 +1,28 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Thins a stream of readings to at most one per interval, by reading time. Plain Java so the
+ * replay harness thins exactly as the watch does. Not thread-safe.
+ */
+public final class PressureDecimator {
+
+    /** One history sample every six minutes, as the face has always sampled. */
+    public static final long SAMPLE_INTERVAL_MS = 6 * 60 * 1000L;
+
+    private final long intervalMs;
+    private long lastMs = Long.MIN_VALUE;
+
+    public PressureDecimator(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    /** Whether a reading at {@code timeMs} should be kept. Call {@link #kept} if it is. */
+    public boolean wants(long timeMs) {
+        return lastMs == Long.MIN_VALUE || timeMs - lastMs >= intervalMs;
+    }
+
+    /** Records that a reading at {@code timeMs} was kept. */
+    public void kept(long timeMs) {
+        lastMs = timeMs;
+    }
+}
@@ -0,0 +1,106 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Kalman filter for the pressure level and its rate of change, with a constant-rate model: the
+ * rate drifts as a random walk, the level follows the rate plus noise of its own (weather and the
+ * wearer climbing stairs), and each reading is the level plus sensor noise. Two states, so the
+ * covariance is three doubles and an update is a few dozen flops with no allocation.
+ *
+ * <p>Samples may be irregular; the prediction step scales with the time since the last one, and
+ * a gap of more than {@link #RESET_GAP_MS} starts the filter afresh. Not thread-safe.
+ */
+public final class PressureFilter {
+
+    private static final double MILLIS_PER_HOUR = 3600000.0;
+
+    /** A gap longer than this forgets the old estimate rather than bridging it. */
+    public static final long RESET_GAP_MS = 6 * 3600000L;
+
+    /* Variance of one reading, mbar^2: the barometer is good to about 0.1 mbar. */
+    private static final double MEASUREMENT_VARIANCE = 0.01;
+    /* Level process noise, mbar^2 per hour. */
+    private static final double LEVEL_NOISE = 0.5;
+    /* Rate process noise, (mbar/h)^2 per hour: fronts change the rate over hours. */
+    private static final double RATE_NOISE = 0.25;
+    /* Uncertainty of the rate before there is any evidence, (mbar/h)^2. */
+    private static final double INITIAL_RATE_VARIANCE = 4.0;
+
+    private boolean initialized;
+    private long lastTimeMs;
+    private double level;
+    private double rate;
+    private double p00, p01, p11;
+    private long updates;
+
+    /** Folds in a reading of {@code millibar} taken at {@code timeMs}. */
+    public void update(float millibar, long timeMs) {
+        updates++;
+        if (!initialized || timeMs - lastTimeMs > RESET_GAP_MS) {
+            reset(millibar, timeMs);
+            return;
+        }
+        double dt = Math.max(0, timeMs - lastTimeMs) / MILLIS_PER_HOUR;
+        lastTimeMs = Math.max(lastTimeMs, timeMs);
+
+        // Predict: x = F x, P = F P F' + Q with F = [1 dt; 0 1].
+        level += rate * dt;
+        double dt2 = dt * dt;
+        p00 += 2 * dt * p01 + dt2 * p11 + LEVEL_NOISE * dt + RATE_NOISE * dt2 * dt / 3;
+        p01 += dt * p11 + RATE_NOISE * dt2 / 2;
+        p11 += RATE_NOISE * dt;
+
+        // Update with H = [1 0].
+        double innovation = millibar - level;
+        double s = p00 + MEASUREMENT_VARIANCE;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        level += k0 * innovation;
+        rate += k1 * innovation;
+        p11 -= k1 * p01;
+        p01 -= k0 * p01;
+        p00 -= k0 * p00;
+    }
+
+    private void reset(float millibar, long timeMs) {
+        initialized = true;
+        lastTimeMs = timeMs;
+        level = millibar;
+        rate = 0;
+        p00 = MEASUREMENT_VARIANCE;
+        p01 = 0;
+        p11 = INITIAL_RATE_VARIANCE;
+    }
+
+    public void clear() {
+        initialized = false;
+    }
+
+    /** Whether there has been a reading to estimate from. */
+    public boolean hasEstimate() {
+        return initialized;
+    }
+
+    /** Estimated pressure at the last reading, mbar. */
+    public float getLevel() {
+        return (float) level;
+    }
+
+    /** Estimated rate of change, mbar per hour. */
+    public float getRatePerHour() {
+        return (float) rate;
+    }
+
+    /**
+     * Altitude above sea level in metres for a pressure, by the international barometric
+     * formula, to the nearest ten metres below as the face shows it.
+     */
+    public static int altitudeMetres(float millibar) {
+        int altitude = (int) ((1 - Math.pow(millibar / 1013.25, 0.190284)) * 4430);
+        return 10 * altitude;
+    }
+
+    /** Readings folded in since construction. */
+    public long getUpdates() {
+        return updates;
+    }
+}
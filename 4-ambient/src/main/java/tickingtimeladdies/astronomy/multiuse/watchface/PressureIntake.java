@@ -0,0 +1,49 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * The sensor-thread half of the pressure path: every reading feeds the {@link PressureTiers}, and
+ * one per sample interval is kept and queued for the UI thread in a {@link SampleQueue}. Plain
+ * Java, so {@link PressureReplay} runs exactly what {@link PressurePipeline} runs on the watch.
+ * One thread may call {@link #add}, one other thread may call {@link #drain}.
+ */
+public final class PressureIntake {
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final PressureTiers tiers = new PressureTiers();
+    private final PressureDecimator decimator;
+    private final SampleQueue queue = new SampleQueue(QUEUE_CAPACITY);
+
+    public PressureIntake(long sampleIntervalMs) {
+        decimator = new PressureDecimator(sampleIntervalMs);
+    }
+
+    /**
+     * Producer side: takes a reading at {@code timeMs}, wall time.
+     *
+     * @return whether it was kept and queued, so the consumer has something to drain
+     */
+    public boolean add(float millibar, long timeMs) {
+        tiers.add(millibar, timeMs);
+        if (!decimator.wants(timeMs) || !queue.offer(millibar, timeMs)) {
+            return false;
+        }
+        decimator.kept(timeMs);
+        return true;
+    }
+
+    /** Continues thinning from a sample kept earlier, e.g. restored from disk. Producer side. */
+    public void setLastSampleTime(long timeMs) {
+        decimator.kept(timeMs);
+    }
+
+    /** Multi-resolution aggregates of every reading; safe to query from any thread. */
+    public PressureTiers getTiers() {
+        return tiers;
+    }
+
+    /** Consumer side. See {@link SampleQueue#drain}. */
+    public int drain(float[] values, long[] times) {
+        return queue.drain(values, times);
+    }
+}
@@ -0,0 +1,222 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only on-disk log of pressure samples, so the history survives the engine and the
+ * process. Records are fixed width so the newest can be found by offset and read straight out of
+ * a memory mapping, with no parsing. Each record is a time delta in seconds from the base time
+ * in the header and the pressure in hundredths of a millibar.
+ *
+ * <p>Appends are fsynced every {@link #SYNC_RECORDS} records and on {@link #close}, so a crash
+ * loses at most that many samples; a torn last record is dropped on open. When the log holds more
+ * than its record limit it is compacted to the newest half by rewriting it beside itself and
+ * renaming over the original.
+ *
+ * <p>Layout, big-endian: magic, version, base epoch seconds (long), then records of two ints.
+ * Not thread-safe; use from one thread at a time.
+ */
+public final class PressureLog implements Closeable {
+
+    public static final String FILE_NAME = "pressure.log";
+
+    /** Receives restored samples, oldest first. */
+    public interface Sink {
+        void add(float millibar, long timeMillis);
+    }
+
+    private static final int MAGIC = 0x50524c31; // "PRL1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+    private static final int RECORD_BYTES = 4 + 4;
+
+    /** Records kept before compacting, a little over two weeks at one per six minutes. */
+    public static final int MAX_RECORDS = 4096;
+
+    /** Records appended between fsyncs. At one sample per six minutes, an hour. */
+    public static final int SYNC_RECORDS = 10;
+
+    private static final float UNITS_PER_MILLIBAR = 100f;
+
+    private final File file;
+    private final int maxRecords;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.BIG_ENDIAN);
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long baseSeconds;
+    private int records;
+    private int unsynced;
+
+    /**
+     * Opens the log at {@code file}, creating it if missing or unreadable.
+     *
+     * @param maxRecords records kept before compacting; bounds the file to about
+     *                   {@code 8 * maxRecords} bytes
+     * @param nowMillis  base time for a new log
+     */
+    public PressureLog(File file, int maxRecords, long nowMillis) throws IOException {
+        this.file = file;
+        this.maxRecords = maxRecords;
+        open(nowMillis);
+    }
+
+    private void open(long nowMillis) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        boolean valid = false;
+        if (length >= HEADER_BYTES) {
+            readFully(channel, header, 0);
+            valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+        }
+        if (valid) {
+            baseSeconds = header.getLong(8);
+            records = (int) ((length - HEADER_BYTES) / RECORD_BYTES);
+            // Drop a record torn by a crash mid-append so later appends stay aligned.
+            channel.truncate(HEADER_BYTES + (long) records * RECORD_BYTES);
+        } else {
+            baseSeconds = nowMillis / 1000L;
+            records = 0;
+            channel.truncate(0);
+            writeHeader(channel, baseSeconds);
+            channel.force(true);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long baseSeconds) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(baseSeconds).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    /* Fills {@code buffer} from {@code position}; the file ending first means it is corrupt. */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Pressure log ends " + buffer.remaining()
+                        + " bytes short at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /** Appends a sample, compacting first if the log is full. */
+    public void append(float millibar, long timeMillis) throws IOException {
+        if (records >= maxRecords) {
+            compact(maxRecords / 2);
+        }
+        record.clear();
+        record.putInt((int) (timeMillis / 1000L - baseSeconds));
+        record.putInt(Math.round(millibar * UNITS_PER_MILLIBAR));
+        record.flip();
+        long position = HEADER_BYTES + (long) records * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        records++;
+        if (++unsynced >= SYNC_RECORDS) {
+            sync();
+        }
+    }
+
+    /** Forces appended records to storage. */
+    public void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    /**
+     * Adds every logged sample taken at or after {@code sinceMillis} to {@code sink}, oldest
+     * first, and returns how many.
+     */
+    public int restore(Sink sink, long sinceMillis) throws IOException {
+        if (records == 0) {
+            return 0;
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                HEADER_BYTES + (long) records * RECORD_BYTES);
+        map.order(ByteOrder.BIG_ENDIAN);
+        long sinceDelta = sinceMillis / 1000L - baseSeconds;
+        int from = records;
+        while (from > 0 && map.getInt(offset(from - 1)) >= sinceDelta) {
+            from--;
+        }
+        for (int i = from; i < records; i++) {
+            int offset = offset(i);
+            long timeMillis = (baseSeconds + map.getInt(offset)) * 1000L;
+            sink.add(map.getInt(offset + 4) / UNITS_PER_MILLIBAR, timeMillis);
+        }
+        return records - from;
+    }
+
+    private static int offset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    /* Rewrites the log with only its newest {@code keep} records and swaps it in. */
+    private void compact(int keep) throws IOException {
+        int from = records - keep;
+        ByteBuffer body = ByteBuffer.allocate(keep * RECORD_BYTES);
+        readFully(channel, body, offset(from));
+        body.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel outChannel = out.getChannel();
+            outChannel.truncate(0);
+            writeHeader(outChannel, baseSeconds);
+            long position = HEADER_BYTES;
+            while (body.hasRemaining()) {
+                position += outChannel.write(body, position);
+            }
+            outChannel.force(true);
+        } finally {
+            out.close();
+        }
+
+        raf.close();
+        boolean replaced = tmp.renameTo(file);
+        unsynced = 0;
+        open(baseSeconds * 1000L);
+        if (!replaced) {
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    /** Number of records in the log. */
+    public int size() {
+        return records;
+    }
+
+    /** Log size in bytes. */
+    public long getBytes() {
+        return HEADER_BYTES + (long) records * RECORD_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples the barometer on its own thread, independently of drawing. The sensor stays registered
+ * with a long report latency so the hardware FIFO batches readings and the SoC is woken rarely;
+ * readings go through a {@link PressureIntake}, which feeds the {@link PressureTiers} for the
+ * longer tendencies, thins them to one per {@link #SAMPLE_INTERVAL_MS} and queues those for the
+ * UI thread to {@link #drain} into its {@link PressureTrend}. The UI is told once per batch that
+ * samples are waiting. Kept samples are also appended to a {@link PressureLog}, on the same
+ * thread, so disk writes and fsyncs never land on the UI thread.
+ *
+ * <p>Given the wake-up variant of the barometer, the pipeline keeps sampling with the screen off:
+ * the report latency is stretched so the FIFO wakes the SoC at most
+ * {@link BackgroundPressureSampler#WAKEUPS_PER_HOUR} times an hour, and the sampling period so
+ * that a whole batch fits in the FIFO. The history is then complete whenever the face is shown
+ * again, with no sensor work on becoming visible.
+ */
+public class PressurePipeline implements pressureReader.Listener {
+
+    public static final long SAMPLE_INTERVAL_MS = PressureDecimator.SAMPLE_INTERVAL_MS;
+
+    private static final long SAMPLING_PERIOD_US = TimeUnit.SECONDS.toMicros(30);
+    private static final long MAX_REPORT_LATENCY_US = TimeUnit.MINUTES.toMicros(5);
+    private static final long WAKEUP_REPORT_LATENCY_US =
+            TimeUnit.HOURS.toMicros(1) / BackgroundPressureSampler.WAKEUPS_PER_HOUR;
+
+    public interface Listener {
+        /** Called on the main thread when {@link #drain} has samples. */
+        void onPressureSamples();
+    }
+
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final pressureReader reader = new pressureReader();
+    private final PressureIntake intake = new PressureIntake(SAMPLE_INTERVAL_MS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean notifyPending = new AtomicBoolean();
+    private final Listener listener;
+    private PressureLog log;
+    private SensorEventRecorder recorder;
+
+    private HandlerThread thread;
+    private Handler handler;
+
+    private final Runnable notifyListener = new Runnable() {
+        @Override
+        public void run() {
+            notifyPending.set(false);
+            listener.onPressureSamples();
+        }
+    };
+
+    /**
+     * @param log log to append samples to, or null; the pipeline takes ownership and closes it
+     *            in {@link #stop}
+     */
+    public PressurePipeline(SensorManager sensorManager, Sensor sensor, PressureLog log,
+            Listener listener) {
+        this.sensorManager = sensorManager;
+        this.sensor = sensor;
+        this.log = log;
+        this.listener = listener;
+        reader.setListener(this);
+    }
+
+    /**
+     * Continues thinning from a sample restored from disk rather than keeping the next reading.
+     * Call before {@link #start}.
+     */
+    public void setLastSampleTime(long timeMs) {
+        intake.setLastSampleTime(timeMs);
+    }
+
+    /**
+     * Also records every raw event the pipeline sees, for host replay. Call before
+     * {@link #start}; the pipeline closes the recorder in {@link #stop}.
+     */
+    public void setRecorder(SensorEventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread("PressurePipeline");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        long latencyUs = MAX_REPORT_LATENCY_US;
+        long periodUs = SAMPLING_PERIOD_US;
+        if (sensor.isWakeUpSensor()) {
+            latencyUs = WAKEUP_REPORT_LATENCY_US;
+            // An event that doesn't fit in the FIFO wakes the SoC early, so space them out.
+            int fifo = sensor.getFifoMaxEventCount();
+            periodUs = Math.max(periodUs, fifo > 0 ? latencyUs / fifo : latencyUs);
+        }
+        sensorManager.registerListener(reader, sensor, (int) periodUs, (int) latencyUs, handler);
+        if (recorder != null) {
+            sensorManager.registerListener(recorder, sensor, (int) periodUs, (int) latencyUs,
+                    handler);
+        }
+    }
+
+    public void stop() {
+        if (thread == null) {
+            return;
+        }
+        sensorManager.unregisterListener(reader);
+        if (recorder != null) {
+            sensorManager.unregisterListener(recorder);
+        }
+        // Queued ahead of the quit, so it runs after any batch still being delivered.
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeLog();
+                if (recorder != null) {
+                    recorder.close();
+                    recorder = null;
+                }
+            }
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /** Called on the pipeline thread for every reading, batched or not. */
+    @Override
+    public void onPressure(float millibar, long timestampNanos) {
+        long timeMs = toWallTime(timestampNanos);
+        if (!intake.add(millibar, timeMs)) {
+            return;
+        }
+        if (log != null) {
+            try {
+                log.append(millibar, timeMs);
+            } catch (IOException e) {
+                Log.w("PressurePipeline", "Pressure log failed, no longer persisting", e);
+                closeLog();
+            }
+        }
+        if (notifyPending.compareAndSet(false, true)) {
+            mainHandler.post(notifyListener);
+        }
+    }
+
+    /**
+     * Converts a sensor event timestamp, on the elapsed realtime clock, to wall time in millis,
+     * which is what the history is kept in.
+     */
+    public static long toWallTime(long timestampNanos) {
+        long ageMs = (SystemClock.elapsedRealtimeNanos() - timestampNanos) / 1000000L;
+        return System.currentTimeMillis() - ageMs;
+    }
+
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            Log.w("PressurePipeline", "Pressure log failed to close", e);
+        }
+        log = null;
+    }
+
+    /** Multi-resolution aggregates of every reading; safe to query from any thread. */
+    public PressureTiers getTiers() {
+        return intake.getTiers();
+    }
+
+    /** UI thread only. Moves every waiting sample into {@code trend}; returns how many. */
+    public int drain(PressureTrend trend) {
+        return trend.drain(intake);
+    }
+}
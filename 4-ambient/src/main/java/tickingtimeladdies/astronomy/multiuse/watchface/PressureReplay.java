@@ -0,0 +1,116 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Build-host replay of a barometer {@link SensorRecording} through the same code the watch runs:
+ * the {@link pressureReader}, then the {@link PressureIntake} the {@link PressurePipeline} feeds
+ * on the sensor thread, then the {@link PressureTrend} the face draws from. It prints the trend
+ * and altitude the face would show at every kept sample, then the throughput of the whole path,
+ * so trend output can be checked against recorded weather and changes to the path timed without
+ * a barometer. See the {@code replayPressure} task in build.gradle.
+ */
+public final class PressureReplay implements pressureReader.Listener {
+
+    private static final long THREE_HOURS_MS = 3 * 3600000L;
+
+    private final pressureReader reader = new pressureReader();
+    private final PressureIntake intake = new PressureIntake(PressureDecimator.SAMPLE_INTERVAL_MS);
+    private final PressureTrend trend =
+            new PressureTrend(PressureTrend.HISTORY_SIZE, PressureDecimator.SAMPLE_INTERVAL_MS);
+    private final boolean print;
+
+    /* Wall time of the event being replayed; the recording has it, so no clock conversion. */
+    private long wallMillis;
+    private long events;
+    private long kept;
+
+    private PressureReplay(boolean print) {
+        this.print = print;
+        reader.setListener(this);
+    }
+
+    /* One recorded sensor event, as delivered to the pipeline's reader. */
+    private void onEvent(float value, long timestampNanos, long wallMillis) {
+        events++;
+        this.wallMillis = wallMillis;
+        reader.onReading(value, timestampNanos);
+    }
+
+    /* What PressurePipeline.onPressure does on the sensor thread, less the log. */
+    @Override
+    public void onPressure(float millibar, long timestampNanos) {
+        if (intake.add(millibar, wallMillis)) {
+            drain();
+        }
+    }
+
+    /* What the engine does on the UI thread when told there are samples. */
+    private void drain() {
+        int count = trend.drain(intake);
+        kept += count;
+        if (!print || count == 0) {
+            return;
+        }
+        SampleHistory history = trend.getHistory();
+        PressureFilter filter = trend.getFilter();
+        long time = history.newestTime();
+        System.out.println(time + "," + history.newest() + "," + filter.getLevel() + ","
+                + filter.getRatePerHour() + "," + trend.getArcDegrees() + ","
+                + trend.getAltitudeMetres() + ","
+                + intake.getTiers().change(time - THREE_HOURS_MS, time));
+    }
+
+    /**
+     * {@code PressureReplay <recording> [--realtime] [--quiet]}: {@code --realtime} paces events by
+     * their timestamps rather than replaying as fast as possible; {@code --quiet} skips the
+     * per-sample output, for timing.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: PressureReplay <recording> [--realtime] [--quiet]");
+            System.exit(1);
+        }
+        boolean realtime = false;
+        boolean quiet = false;
+        for (int i = 1; i < args.length; i++) {
+            if ("--realtime".equals(args[i])) {
+                realtime = true;
+            } else if ("--quiet".equals(args[i])) {
+                quiet = true;
+            }
+        }
+
+        PressureReplay replay = new PressureReplay(!quiet);
+        if (!quiet) {
+            System.out.println("time_ms,raw_mbar,level_mbar,rate_mbar_h,arc_deg,altitude_m,"
+                    + "change_3h_mbar");
+        }
+        SensorRecording.Reader reader = new SensorRecording.Reader(new File(args[0]));
+        long startNanos = System.nanoTime();
+        long firstEventNanos = Long.MIN_VALUE;
+        try {
+            while (reader.next()) {
+                if (realtime) {
+                    if (firstEventNanos == Long.MIN_VALUE) {
+                        firstEventNanos = reader.getTimestampNanos();
+                    }
+                    long dueNanos = startNanos + reader.getTimestampNanos() - firstEventNanos;
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                    }
+                }
+                replay.onEvent(reader.getValue(0), reader.getTimestampNanos(),
+                        reader.getWallMillis());
+            }
+        } finally {
+            reader.close();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.err.println(replay.events + " events, " + replay.kept + " kept, "
+                + elapsedNanos / 1000000L + " ms, "
+                + (long) (replay.events * 1e9 / Math.max(1, elapsedNanos)) + " events/s");
+    }
+}
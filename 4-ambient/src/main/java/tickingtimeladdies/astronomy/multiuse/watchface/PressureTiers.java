@@ -0,0 +1,183 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Pressure aggregated at three resolutions: 180 one-minute buckets (3 hours), 96 fifteen-minute
+ * buckets (24 hours) and 168 hourly buckets (7 days), each holding the minimum, sum and maximum
+ * of the readings that fell in it. Every reading updates its bucket in all three tiers, so the
+ * coarser tiers are exact rather than rolled up from rounded finer ones, and memory stays fixed at
+ * a few KB however long the face runs.
+ *
+ * <p>Queries pick the finest tier that reaches back far enough and cost one pass over its
+ * buckets, with no allocation. Fed from the sensor thread and read from the UI thread, so all
+ * methods are synchronized.
+ */
+public final class PressureTiers implements PressureLog.Sink {
+
+    private static final long MINUTE_MS = 60000L;
+
+    private final Tier[] tiers = {
+            new Tier(MINUTE_MS, 180),
+            new Tier(15 * MINUTE_MS, 96),
+            new Tier(60 * MINUTE_MS, 168),
+    };
+
+    private static final class Tier {
+        final long widthMs;
+        final int capacity;
+        final float[] min;
+        final float[] max;
+        final float[] sum;
+        final int[] count;
+        /* Bucket number (time / width) of the newest bucket, which lives at slot head. */
+        long newest = Long.MIN_VALUE;
+        int head;
+
+        Tier(long widthMs, int capacity) {
+            this.widthMs = widthMs;
+            this.capacity = capacity;
+            min = new float[capacity];
+            max = new float[capacity];
+            sum = new float[capacity];
+            count = new int[capacity];
+        }
+
+        void add(float value, long timeMs) {
+            long bucket = timeMs / widthMs;
+            if (newest == Long.MIN_VALUE || bucket - newest >= capacity) {
+                clear();
+                newest = bucket;
+            } else if (bucket > newest) {
+                // Open the buckets in between, empty.
+                for (long b = newest + 1; b <= bucket; b++) {
+                    head = head + 1 == capacity ? 0 : head + 1;
+                    count[head] = 0;
+                }
+                newest = bucket;
+            } else if (newest - bucket >= capacity) {
+                return;
+            }
+            int slot = slot(bucket);
+            if (count[slot] == 0) {
+                min[slot] = value;
+                max[slot] = value;
+                sum[slot] = value;
+            } else {
+                if (value < min[slot]) {
+                    min[slot] = value;
+                }
+                if (value > max[slot]) {
+                    max[slot] = value;
+                }
+                sum[slot] += value;
+            }
+            count[slot]++;
+        }
+
+        void clear() {
+            for (int i = 0; i < capacity; i++) {
+                count[i] = 0;
+            }
+            head = 0;
+        }
+
+        /* Slot of a bucket no older than capacity buckets before the newest. */
+        int slot(long bucket) {
+            int back = (int) (newest - bucket);
+            return head >= back ? head - back : head - back + capacity;
+        }
+
+        /* Oldest bucket number still held. */
+        long oldest() {
+            return newest - capacity + 1;
+        }
+    }
+
+    /** Adds a reading taken at {@code timeMs} to every tier. */
+    @Override
+    public synchronized void add(float millibar, long timeMs) {
+        for (Tier tier : tiers) {
+            tier.add(millibar, timeMs);
+        }
+    }
+
+    /**
+     * Writes the minimum, mean and maximum of the readings from {@code fromMs} to {@code toMs}
+     * into {@code out[0..2]}, at the resolution of the finest tier reaching back to
+     * {@code fromMs}. Returns false, leaving {@code out} alone, if there are no readings there.
+     */
+    public synchronized boolean query(long fromMs, long toMs, float[] out) {
+        Tier tier = tierFor(fromMs);
+        if (tier.newest == Long.MIN_VALUE) {
+            return false;
+        }
+        long first = Math.max(fromMs / tier.widthMs, tier.oldest());
+        long last = Math.min(toMs / tier.widthMs, tier.newest);
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        double sum = 0;
+        int count = 0;
+        for (long bucket = first; bucket <= last; bucket++) {
+            int slot = tier.slot(bucket);
+            if (tier.count[slot] == 0) {
+                continue;
+            }
+            min = Math.min(min, tier.min[slot]);
+            max = Math.max(max, tier.max[slot]);
+            sum += tier.sum[slot];
+            count += tier.count[slot];
+        }
+        if (count == 0) {
+            return false;
+        }
+        out[0] = min;
+        out[1] = (float) (sum / count);
+        out[2] = max;
+        return true;
+    }
+
+    /**
+     * Pressure tendency from {@code fromMs} to {@code toMs}: the mean of the newest non-empty
+     * bucket less the mean of the oldest, at the resolution {@link #query} would use. Zero when
+     * fewer than two buckets have readings.
+     */
+    public synchronized float change(long fromMs, long toMs) {
+        Tier tier = tierFor(fromMs);
+        if (tier.newest == Long.MIN_VALUE) {
+            return 0f;
+        }
+        long first = Math.max(fromMs / tier.widthMs, tier.oldest());
+        long last = Math.min(toMs / tier.widthMs, tier.newest);
+        int oldestSlot = -1;
+        int newestSlot = -1;
+        for (long bucket = first; bucket <= last; bucket++) {
+            int slot = tier.slot(bucket);
+            if (tier.count[slot] != 0) {
+                if (oldestSlot < 0) {
+                    oldestSlot = slot;
+                }
+                newestSlot = slot;
+            }
+        }
+        if (oldestSlot < 0 || oldestSlot == newestSlot) {
+            return 0f;
+        }
+        return tier.sum[newestSlot] / tier.count[newestSlot]
+                - tier.sum[oldestSlot] / tier.count[oldestSlot];
+    }
+
+    /* Finest tier whose oldest bucket is no later than fromMs, else the coarsest. */
+    private Tier tierFor(long fromMs) {
+        for (Tier tier : tiers) {
+            if (tier.newest != Long.MIN_VALUE && tier.oldest() * tier.widthMs <= fromMs) {
+                return tier;
+            }
+        }
+        return tiers[tiers.length - 1];
+    }
+
+    /** How far back the coarsest tier reaches. */
+    public long getSpanMs() {
+        Tier coarsest = tiers[tiers.length - 1];
+        return coarsest.widthMs * coarsest.capacity;
+    }
+}
@@ -0,0 +1,87 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * The UI-thread half of the pressure path: kept samples go into a {@link SampleHistory} and a
+ * {@link PressureFilter}, from which the face reads the trend arc and the altitude. Plain Java,
+ * so {@link PressureReplay} computes exactly what the face draws. Not thread-safe.
+ */
+public final class PressureTrend implements PressureLog.Sink {
+
+    /** Samples the face keeps: six hours at one sample per six minutes. */
+    public static final int HISTORY_SIZE = 60;
+
+    /** Degrees of trend arc per millibar of filtered change over the trend span. */
+    public static final float ARC_DEGREES_PER_MILLIBAR = 4f;
+
+    /* The arc runs at most half way round the dial either way. */
+    private static final float MAX_ARC_DEGREES = 180f;
+
+    private static final float MILLIS_PER_HOUR = 3600000f;
+
+    private final SampleHistory history;
+    private final PressureFilter filter = new PressureFilter();
+    private final float trendHours;
+    private final float[] drainValues = new float[16];
+    private final long[] drainTimes = new long[16];
+
+    /**
+     * @param historySize      samples kept in the history
+     * @param sampleIntervalMs time between kept samples; with {@code historySize} it sets the
+     *                         span the arc shows the change over
+     */
+    public PressureTrend(int historySize, long sampleIntervalMs) {
+        history = new SampleHistory(historySize);
+        trendHours = historySize * sampleIntervalMs / MILLIS_PER_HOUR;
+    }
+
+    /** Takes one kept sample, also as the sink restored log samples are replayed into. */
+    @Override
+    public void add(float millibar, long timeMillis) {
+        history.add(millibar, timeMillis);
+        filter.update(millibar, timeMillis);
+    }
+
+    /** Moves every sample waiting in {@code intake} in. Returns how many there were. */
+    public int drain(PressureIntake intake) {
+        int total = 0;
+        int count;
+        while ((count = intake.drain(drainValues, drainTimes)) > 0) {
+            for (int i = 0; i < count; i++) {
+                add(drainValues[i], drainTimes[i]);
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Sweep of the trend arc in degrees: the filtered change over the trend span, positive for
+     * rising pressure, clamped to half the dial.
+     */
+    public float getArcDegrees() {
+        float arc = ARC_DEGREES_PER_MILLIBAR * filter.getRatePerHour() * trendHours;
+        return Math.max(-MAX_ARC_DEGREES, Math.min(MAX_ARC_DEGREES, arc));
+    }
+
+    /** Altitude shown for the filtered level. Only meaningful when {@link #hasEstimate}. */
+    public int getAltitudeMetres() {
+        return PressureFilter.altitudeMetres(filter.getLevel());
+    }
+
+    public boolean hasEstimate() {
+        return filter.hasEstimate();
+    }
+
+    /** Span the arc shows the change over, in hours. */
+    public float getTrendHours() {
+        return trendHours;
+    }
+
+    public SampleHistory getHistory() {
+        return history;
+    }
+
+    public PressureFilter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,196 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Fixed-capacity history of timestamped sensor samples in primitive arrays, with the mean,
+ * minimum, maximum and least-squares slope kept up to date as samples come and go, so readers
+ * never iterate or allocate. When full, each new sample evicts the oldest.
+ *
+ * <p>Minimum and maximum are kept with monotonic queues of sample slots, amortized
+ * O(1) per insert. The regression sums are maintained incrementally in double precision, with
+ * times relative to a rebased origin, and recomputed from scratch every few capacities of inserts
+ * so rounding can't accumulate. Not thread-safe; use from one thread.
+ */
+public final class SampleHistory implements PressureLog.Sink {
+
+    private static final double MILLIS_PER_HOUR = 3600000.0;
+
+    /* Full resum every this many capacities of inserts. */
+    private static final int RECOMPUTE_PERIODS = 4;
+
+    private final int capacity;
+    private final float[] values;
+    private final long[] times;
+
+    /* Slot of the oldest retained sample, and the number retained. */
+    private int first;
+    private int size;
+
+    /*
+     * Slots whose values increase (min queue) or decrease (max queue) front to back, as rings of
+     * the same capacity with a head slot and a length.
+     */
+    private final int[] minQueue;
+    private final int[] maxQueue;
+    private int minHead, minSize;
+    private int maxHead, maxSize;
+
+    /* Regression sums over hours since timeOrigin. */
+    private long timeOrigin;
+    private double sumT, sumV, sumTT, sumTV;
+    private int insertsSinceRecompute;
+
+    public SampleHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.capacity = capacity;
+        values = new float[capacity];
+        times = new long[capacity];
+        minQueue = new int[capacity];
+        maxQueue = new int[capacity];
+    }
+
+    /** Appends a sample taken at {@code timeMillis}, evicting the oldest if full. */
+    @Override
+    public void add(float value, long timeMillis) {
+        if (size == capacity) {
+            evictOldest();
+        }
+        if (size == 0) {
+            timeOrigin = timeMillis;
+            sumT = sumV = sumTT = sumTV = 0;
+        }
+        int slot = wrap(first + size++);
+        values[slot] = value;
+        times[slot] = timeMillis;
+        double t = (timeMillis - timeOrigin) / MILLIS_PER_HOUR;
+        sumT += t;
+        sumV += value;
+        sumTT += t * t;
+        sumTV += t * value;
+
+        while (minSize > 0 && values[minQueue[wrap(minHead + minSize - 1)]] >= value) {
+            minSize--;
+        }
+        minQueue[wrap(minHead + minSize++)] = slot;
+        while (maxSize > 0 && values[maxQueue[wrap(maxHead + maxSize - 1)]] <= value) {
+            maxSize--;
+        }
+        maxQueue[wrap(maxHead + maxSize++)] = slot;
+
+        if (++insertsSinceRecompute >= RECOMPUTE_PERIODS * capacity) {
+            recompute();
+        }
+    }
+
+    private void evictOldest() {
+        int slot = first;
+        first = wrap(first + 1);
+        size--;
+        double t = (times[slot] - timeOrigin) / MILLIS_PER_HOUR;
+        float value = values[slot];
+        sumT -= t;
+        sumV -= value;
+        sumTT -= t * t;
+        sumTV -= t * value;
+        // Every queued slot is retained, so a queue front equal to the evicted slot is it.
+        if (minQueue[minHead] == slot) {
+            minHead = wrap(minHead + 1);
+            minSize--;
+        }
+        if (maxQueue[maxHead] == slot) {
+            maxHead = wrap(maxHead + 1);
+            maxSize--;
+        }
+    }
+
+    /* Rebases the time origin on the oldest sample and resums, bounding rounding error. */
+    private void recompute() {
+        insertsSinceRecompute = 0;
+        timeOrigin = times[first];
+        sumT = sumV = sumTT = sumTV = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = wrap(first + i);
+            double t = (times[slot] - timeOrigin) / MILLIS_PER_HOUR;
+            sumT += t;
+            sumV += values[slot];
+            sumTT += t * t;
+            sumTV += t * values[slot];
+        }
+    }
+
+    /* Maps first + offset back into [0, capacity); offsets never exceed twice the capacity. */
+    private int wrap(int index) {
+        return index >= capacity ? index - capacity : index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        first = size = 0;
+        minHead = minSize = maxHead = maxSize = 0;
+        insertsSinceRecompute = 0;
+    }
+
+    /** The most recent sample. Only valid when not empty. */
+    public float newest() {
+        return values[wrap(first + size - 1)];
+    }
+
+    /** The oldest retained sample. Only valid when not empty. */
+    public float oldest() {
+        return values[first];
+    }
+
+    public long newestTime() {
+        return times[wrap(first + size - 1)];
+    }
+
+    public long oldestTime() {
+        return times[first];
+    }
+
+    /** Sample {@code i} counting back from the newest, 0 being the newest. */
+    public float get(int i) {
+        return values[wrap(first + size - 1 - i)];
+    }
+
+    /** Timestamp of sample {@code i} counting back from the newest. */
+    public long getTime(int i) {
+        return times[wrap(first + size - 1 - i)];
+    }
+
+    public float mean() {
+        return (float) (sumV / size);
+    }
+
+    public float min() {
+        return values[minQueue[minHead]];
+    }
+
+    public float max() {
+        return values[maxQueue[maxHead]];
+    }
+
+    /**
+     * Least-squares slope of the retained samples in units per hour, or 0 with fewer than two
+     * samples or when they all share a timestamp.
+     */
+    public float slopePerHour() {
+        int n = size;
+        if (n < 2) {
+            return 0f;
+        }
+        double denominator = n * sumTT - sumT * sumT;
+        if (denominator <= 1e-12) {
+            return 0f;
+        }
+        return (float) ((n * sumTV - sumT * sumV) / denominator);
+    }
+}
@@ -0,0 +1,67 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Lock-free single-producer/single-consumer queue of timestamped samples, backed by primitive
+ * arrays so handing a sample across threads never allocates. One thread may call {@link #offer},
+ * one other thread may call {@link #drain}.
+ */
+public final class SampleQueue {
+
+    private final float[] values;
+    private final long[] times;
+    private final int mask;
+
+    /* Next slot to read; written only by the consumer. */
+    private volatile long head;
+    /* Next slot to write; written only by the producer. */
+    private volatile long tail;
+
+    private volatile long dropped;
+
+    /** @param capacity rounded up to a power of two */
+    public SampleQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        values = new float[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Producer side. Returns false and counts a drop if the consumer has fallen a full queue
+     * behind.
+     */
+    public boolean offer(float value, long time) {
+        long t = tail;
+        if (t - head > mask) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (t & mask);
+        values[slot] = value;
+        times[slot] = time;
+        // The volatile write publishes the slot to the consumer.
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Consumer side. Moves up to {@code outValues.length} samples, oldest first, into the given
+     * arrays and returns how many.
+     */
+    public int drain(float[] outValues, long[] outTimes) {
+        long h = head;
+        int count = (int) Math.min(tail - h, outValues.length);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((h + i) & mask);
+            outValues[i] = values[slot];
+            outTimes[i] = times[slot];
+        }
+        head = h + count;
+        return count;
+    }
+
+    /** Samples refused because the queue was full. */
+    public long getDropped() {
+        return dropped;
+    }
+}
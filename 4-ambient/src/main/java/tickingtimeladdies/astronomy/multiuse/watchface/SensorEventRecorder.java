@@ -0,0 +1,52 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes every event of the sensor it is registered for to a {@link SensorRecording}, for
+ * replaying on the build host with {@link PressureReplay}. Register it beside the real listener
+ * on the same thread; it stops recording on the first write error.
+ */
+public class SensorEventRecorder implements SensorEventListener {
+
+    private final SensorRecording.Writer writer;
+    private boolean failed;
+
+    public SensorEventRecorder(File file, Sensor sensor, int valueCount) throws IOException {
+        writer = new SensorRecording.Writer(file, sensor.getType(), valueCount,
+                System.currentTimeMillis(), SystemClock.elapsedRealtimeNanos());
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (failed) {
+            return;
+        }
+        try {
+            writer.write(event.timestamp, event.accuracy, event.values);
+        } catch (IOException e) {
+            Log.w("SensorEventRecorder", "Recording failed, stopping", e);
+            failed = true;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    /** Flushes and closes the recording. Call on the thread events arrive on, or after. */
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.w("SensorEventRecorder", "Recording failed to close", e);
+        }
+    }
+}
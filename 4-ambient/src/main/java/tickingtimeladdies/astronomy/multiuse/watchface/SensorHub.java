@@ -0,0 +1,351 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duty-cycles the slow environmental sensors (temperature, humidity, light and the like) on one
+ * thread. Each sensor is a {@link Channel} with its own sampling policy, sensor-on budget and
+ * {@link SampleHistory}; it is switched on only long enough for one short burst of readings,
+ * reduced to one value by {@link pressureReader#startBurst}.
+ *
+ * <p>Wake-ups are shared: whenever any channel comes due, every other channel within
+ * {@link #DUE_SLACK} of its own due time is sampled in the same wake-up, and callers that are
+ * awake anyway (the pressure pipeline delivering a batch) can offer theirs with
+ * {@link #onWakeup}. The hub's timer doesn't wake the device itself; channels sampled late are
+ * caught up by the next shared wake-up.
+ *
+ * <p>The pressure sensor stays on its own {@link PressurePipeline}, whose hardware batching costs
+ * less than duty cycling.
+ */
+public class SensorHub {
+
+    /* A channel due within this fraction of its interval is sampled early rather than woken for. */
+    private static final float DUE_SLACK = 0.25f;
+
+    /* Give up on a burst after this long. */
+    private static final long READ_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    /** How often one sensor is sampled and how much it may cost. */
+    public static final class Policy {
+        final long intervalMs;
+        final int burstSize;
+        final long maxOnMsPerHour;
+
+        /**
+         * @param intervalMs     time between samples
+         * @param burstSize      readings reduced to each sample
+         * @param maxOnMsPerHour sensor-on time allowed per hour; samples beyond it are skipped
+         *                       until the hour is up
+         */
+        public Policy(long intervalMs, int burstSize, long maxOnMsPerHour) {
+            this.intervalMs = intervalMs;
+            this.burstSize = burstSize;
+            this.maxOnMsPerHour = maxOnMsPerHour;
+        }
+    }
+
+    public interface Listener {
+        /** Called on the hub thread after {@code channel} takes a sample. */
+        void onSample(Channel channel);
+    }
+
+    /** One sensor: its policy, reader, history and cost. */
+    public final class Channel implements pressureReader.Listener, Runnable {
+
+        private final Sensor sensor;
+        private final Policy policy;
+        private final pressureReader reader = new pressureReader();
+        private final SampleHistory history;
+
+        private boolean active;
+        /* The loop the current burst runs on; stop() may have replaced the hub's by its end. */
+        private Loop activeLoop;
+        private long onSinceMs;
+        private long nextDueMs;
+        private long budgetWindowStartMs;
+        private long budgetWindowOnMs;
+        private long onMs;
+        private long samples;
+        private long skipped;
+
+        Channel(Sensor sensor, Policy policy, int historySize) {
+            this.sensor = sensor;
+            this.policy = policy;
+            history = new SampleHistory(historySize);
+            reader.setListener(this);
+        }
+
+        public int getType() {
+            return sensor.getType();
+        }
+
+        /**
+         * Copies the latest sample into {@code out}, from any thread.
+         *
+         * @return false if there has been none yet
+         */
+        public boolean read(pressureReader.Sample out) {
+            return reader.read(out);
+        }
+
+        /**
+         * Samples kept for this sensor. Lock on the channel while reading it off the hub thread.
+         */
+        public SampleHistory getHistory() {
+            return history;
+        }
+
+        /** Total sensor-on milliseconds. */
+        public synchronized long getSensorOnMs() {
+            return onMs;
+        }
+
+        public synchronized long getSamples() {
+            return samples;
+        }
+
+        /** Samples skipped because the channel's hourly budget was spent. */
+        public synchronized long getSkipped() {
+            return skipped;
+        }
+
+        /* Hub thread. */
+        boolean isDue(long nowMs, boolean early) {
+            long slack = early ? (long) (policy.intervalMs * DUE_SLACK) : 0;
+            return !active && nowMs >= nextDueMs - slack;
+        }
+
+        /* Hub thread. Switches the sensor on for one burst on {@code loop}, budget allowing. */
+        void sample(long nowMs, Loop loop) {
+            if (nowMs - budgetWindowStartMs >= HOUR_MS) {
+                budgetWindowStartMs = nowMs;
+                budgetWindowOnMs = 0;
+            }
+            if (budgetWindowOnMs >= policy.maxOnMsPerHour) {
+                synchronized (this) {
+                    skipped++;
+                }
+                nextDueMs = budgetWindowStartMs + HOUR_MS;
+                return;
+            }
+            active = true;
+            activeLoop = loop;
+            onSinceMs = nowMs;
+            reader.startBurst(policy.burstSize, TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS));
+            sensorManager.registerListener(reader, sensor, SensorManager.SENSOR_DELAY_NORMAL,
+                    loop.handler);
+            loop.handler.postDelayed(this, READ_TIMEOUT_MS);
+        }
+
+        /* Hub thread: the burst is done. */
+        @Override
+        public void onPressure(float value, long timestampNanos) {
+            if (!active) {
+                return;
+            }
+            switchOff();
+            synchronized (this) {
+                history.add(value, PressurePipeline.toWallTime(timestampNanos));
+                samples++;
+            }
+            if (listener != null) {
+                listener.onSample(this);
+            }
+        }
+
+        /* Hub thread: the burst timed out. */
+        @Override
+        public void run() {
+            if (active) {
+                Log.w("SensorHub", "No reading from " + sensor.getName());
+                switchOff();
+            }
+        }
+
+        private void switchOff() {
+            Loop loop = activeLoop;
+            active = false;
+            activeLoop = null;
+            sensorManager.unregisterListener(reader);
+            loop.handler.removeCallbacks(this);
+            long nowMs = SystemClock.elapsedRealtime();
+            long on = nowMs - onSinceMs;
+            budgetWindowOnMs += on;
+            synchronized (this) {
+                onMs += on;
+            }
+            nextDueMs = nowMs + policy.intervalMs;
+            scheduleTick(loop);
+        }
+    }
+
+    /*
+     * One run of the hub thread. stop() drops the hub's reference but work already queued here
+     * keeps its own, so it can finish without seeing a null handler.
+     */
+    private final class Loop {
+        final HandlerThread thread = new HandlerThread("SensorHub");
+        final Handler handler;
+
+        final Runnable tick = new Runnable() {
+            @Override
+            public void run() {
+                serviceDue(Loop.this, false);
+            }
+        };
+
+        final Runnable sharedWakeup = new Runnable() {
+            @Override
+            public void run() {
+                serviceDue(Loop.this, true);
+            }
+        };
+
+        Loop() {
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+    }
+
+    private final SensorManager sensorManager;
+    private final Listener listener;
+    private final ArrayList<Channel> channels = new ArrayList<Channel>();
+
+    /* Null while stopped. Written on the caller's thread, read by onWakeup from any thread. */
+    private volatile Loop loop;
+    private volatile long wakeups;
+
+    public SensorHub(SensorManager sensorManager, Listener listener) {
+        this.sensorManager = sensorManager;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a channel for the default sensor of {@code type}, or returns null if there is none.
+     * Call before {@link #start}.
+     */
+    public Channel addChannel(int type, Policy policy, int historySize) {
+        Sensor sensor = sensorManager.getDefaultSensor(type);
+        if (sensor == null) {
+            return null;
+        }
+        Channel channel = new Channel(sensor, policy, historySize);
+        channels.add(channel);
+        return channel;
+    }
+
+    public void start() {
+        if (loop != null || channels.isEmpty()) {
+            return;
+        }
+        Loop l = new Loop();
+        loop = l;
+        l.handler.post(l.tick);
+    }
+
+    public void stop() {
+        final Loop l = loop;
+        if (l == null) {
+            return;
+        }
+        loop = null;
+        l.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                l.handler.removeCallbacksAndMessages(null);
+                for (Channel channel : channels) {
+                    // A restarted hub may already have its own burst going.
+                    if (channel.active && channel.activeLoop == l) {
+                        channel.switchOff();
+                    }
+                }
+                l.handler.removeCallbacksAndMessages(null);
+            }
+        });
+        l.thread.quitSafely();
+    }
+
+    /**
+     * Tells the hub the device is awake anyway, so channels close to due are sampled now rather
+     * than waking it again shortly. Any thread.
+     */
+    public void onWakeup() {
+        Loop l = loop;
+        if (l != null) {
+            l.handler.post(l.sharedWakeup);
+        }
+    }
+
+    /*
+     * Hub thread. If any channel is due, or the device is awake anyway, samples every channel
+     * that is due or nearly so.
+     */
+    private void serviceDue(Loop l, boolean awake) {
+        long nowMs = SystemClock.elapsedRealtime();
+        if (!awake) {
+            for (Channel channel : channels) {
+                if (channel.isDue(nowMs, false)) {
+                    awake = true;
+                    wakeups++;
+                    break;
+                }
+            }
+        }
+        if (awake) {
+            for (Channel channel : channels) {
+                if (channel.isDue(nowMs, true)) {
+                    channel.sample(nowMs, l);
+                }
+            }
+        }
+        scheduleTick(l);
+    }
+
+    /* Hub thread. Times the next tick on {@code l} for the earliest due channel. */
+    private void scheduleTick(Loop l) {
+        long next = Long.MAX_VALUE;
+        for (Channel channel : channels) {
+            if (channel.active) {
+                return;
+            }
+            next = Math.min(next, channel.nextDueMs);
+        }
+        l.handler.removeCallbacks(l.tick);
+        if (next != Long.MAX_VALUE) {
+            l.handler.postDelayed(l.tick, Math.max(0, next - SystemClock.elapsedRealtime()));
+        }
+    }
+
+    /** Sensor-on milliseconds of every channel together. */
+    public long getSensorOnMs() {
+        long total = 0;
+        for (Channel channel : channels) {
+            total += channel.getSensorOnMs();
+        }
+        return total;
+    }
+
+    /** Samples taken by every channel together. */
+    public long getSamples() {
+        long total = 0;
+        for (Channel channel : channels) {
+            total += channel.getSamples();
+        }
+        return total;
+    }
+
+    /** Times the hub's own timer sampled anything, as opposed to a shared wake-up. */
+    public long getWakeups() {
+        return wakeups;
+    }
+}
@@ -0,0 +1,158 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary recording of a sensor event stream, written on the watch by
+ * {@link SensorEventRecorder} and played back on the build host by {@link PressureReplay}. Plain
+ * Java so both ends can use it.
+ *
+ * <p>Layout, big-endian: magic, version, sensor type, values per event, wall clock millis and
+ * elapsed realtime nanos at the start of the recording. Then per event: the timestamp delta from
+ * the previous event in nanos as a zigzag varint, the accuracy as a byte and the values as
+ * floats. A pressure event at a 30 s sampling period takes eleven bytes.
+ */
+public final class SensorRecording {
+
+    private static final int MAGIC = 0x53524331; // "SRC1"
+    private static final int VERSION = 1;
+
+    private SensorRecording() {
+    }
+
+    /** Appends events to a new recording. Use from one thread. */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int valueCount;
+        private long lastTimestamp;
+
+        /**
+         * @param startWallMillis     wall clock at {@code startElapsedNanos}, so playback can
+         *                            put events on the calendar
+         * @param startElapsedNanos   elapsed realtime at the start, the clock event timestamps use
+         */
+        public Writer(File file, int sensorType, int valueCount, long startWallMillis,
+                long startElapsedNanos) throws IOException {
+            this.valueCount = valueCount;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sensorType);
+            out.writeInt(valueCount);
+            out.writeLong(startWallMillis);
+            out.writeLong(startElapsedNanos);
+            lastTimestamp = startElapsedNanos;
+        }
+
+        public void write(long timestampNanos, int accuracy, float[] values) throws IOException {
+            long delta = timestampNanos - lastTimestamp;
+            lastTimestamp = timestampNanos;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) (zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+            out.writeByte(accuracy);
+            for (int i = 0; i < valueCount; i++) {
+                out.writeFloat(values[i]);
+            }
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Reads a recording event by event, reusing its fields. */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final int sensorType;
+        private final float[] values;
+        private final long startWallMillis;
+        private final long startElapsedNanos;
+        private long timestamp;
+        private int accuracy;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                in.close();
+                throw new IOException("Not a sensor recording: " + file);
+            }
+            sensorType = in.readInt();
+            values = new float[in.readInt()];
+            startWallMillis = in.readLong();
+            startElapsedNanos = in.readLong();
+            timestamp = startElapsedNanos;
+        }
+
+        /**
+         * Advances to the next event. Returns false at the end, including at a record cut short
+         * by the recorder being killed.
+         */
+        public boolean next() throws IOException {
+            try {
+                long zigzag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = in.readUnsignedByte();
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+                accuracy = in.readByte();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readFloat();
+                }
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        public int getSensorType() {
+            return sensorType;
+        }
+
+        /** Event timestamp, elapsed realtime nanos as recorded. */
+        public long getTimestampNanos() {
+            return timestamp;
+        }
+
+        /** Event time on the wall clock of the recording. */
+        public long getWallMillis() {
+            return startWallMillis + (timestamp - startElapsedNanos) / 1000000L;
+        }
+
+        public int getAccuracy() {
+            return accuracy;
+        }
+
+        public float getValue(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
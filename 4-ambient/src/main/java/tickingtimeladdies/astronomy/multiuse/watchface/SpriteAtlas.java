@@ -0,0 +1,224 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * All sprites of one hand theme packed into a single bitmap, so a theme is one allocation and
+ * one texture instead of a dozen. Sprites are addressed by their position in the resource id
+ * array handed to the constructor; {@link #getSource} gives the rect to use as the src of a
+ * {@link Canvas#drawBitmap(Bitmap, Rect, RectF, Paint)} call.
+ *
+ * <p>Sprites are decoded once at their on-screen size by {@link #pack}, so drawing them is a
+ * 1:1 copy under rotation and translation only. The same work can be spread over worker threads
+ * with {@link #layout}, {@link #decodeSprite} and {@link #install}. The atlas can be ALPHA_8 for
+ * sprites of a single colour, which are then drawn in the paint's colour.
+ */
+public class SpriteAtlas {
+
+    /** Widest atlas we lay out before wrapping to a new row; well under any GPU texture limit. */
+    private static final int MAX_WIDTH = 2048;
+
+    /** Transparent gutter around each sprite so filtered sampling never bleeds into a neighbour. */
+    private static final int PADDING = 2;
+
+    private final BitmapDecoder decoder;
+    private final int[] resIds;
+    private final Bitmap.Config config;
+    private final int[] intrinsicWidths;
+    private final int[] intrinsicHeights;
+    private final Rect[] sources;
+
+    private Bitmap atlas;
+
+    /**
+     * Reads the size of every sprite with a bounds-only decode. Nothing is drawable until the
+     * first {@link #pack}. The atlas is packed in {@code config}.
+     */
+    public SpriteAtlas(BitmapDecoder decoder, int[] resIds, Bitmap.Config config) {
+        this.decoder = decoder;
+        this.resIds = resIds;
+        this.config = config;
+        intrinsicWidths = new int[resIds.length];
+        intrinsicHeights = new int[resIds.length];
+        sources = new Rect[resIds.length];
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        for (int i = 0; i < resIds.length; i++) {
+            decoder.decodeBounds(resIds[i], bounds);
+            intrinsicWidths[i] = bounds.outWidth;
+            intrinsicHeights[i] = bounds.outHeight;
+            sources[i] = new Rect();
+        }
+    }
+
+    /**
+     * One layout of the atlas at a given scale, with its own bitmap. Filled in sprite by sprite
+     * with {@link #decodeSprite}, from any threads, and then made current with {@link #install}.
+     */
+    public static final class Packing {
+        private final Rect[] sources;
+        private final Bitmap bitmap;
+        private final BitmapDecoder decoder;
+        private final Canvas canvas;
+        // Sprites can come out of the decoder a pixel off their slot.
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        private Packing(Rect[] sources, Bitmap bitmap, BitmapDecoder decoder) {
+            this.sources = sources;
+            this.bitmap = bitmap;
+            this.decoder = decoder;
+            canvas = new Canvas(bitmap);
+        }
+
+        /** The atlas being filled in, e.g. to fill it from elsewhere instead of decoding. */
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /** Gives back the bitmap of a packing that will never be installed. */
+        public void recycle() {
+            decoder.recycle(bitmap);
+        }
+    }
+
+    /** Width of {@code sprite} on screen at {@code scale}. */
+    public int getScaledWidth(int sprite, float scale) {
+        return Math.max(1, Math.round(intrinsicWidths[sprite] * scale));
+    }
+
+    /** Height of {@code sprite} on screen at {@code scale}. */
+    public int getScaledHeight(int sprite, float scale) {
+        return Math.max(1, Math.round(intrinsicHeights[sprite] * scale));
+    }
+
+    public int getSpriteCount() {
+        return resIds.length;
+    }
+
+    /** Lays out every sprite at {@code scale} and allocates an empty atlas for them. */
+    public Packing layout(float scale) {
+        // Shelf packing, rows wrap at MAX_WIDTH.
+        Rect[] packed = new Rect[resIds.length];
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int width = 0;
+        for (int i = 0; i < resIds.length; i++) {
+            int spriteWidth = getScaledWidth(i, scale);
+            int spriteHeight = getScaledHeight(i, scale);
+            int w = spriteWidth + 2 * PADDING;
+            int h = spriteHeight + 2 * PADDING;
+            if (x + w > MAX_WIDTH && x > 0) {
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+            packed[i] = new Rect(x + PADDING, y + PADDING,
+                    x + PADDING + spriteWidth, y + PADDING + spriteHeight);
+            x += w;
+            rowHeight = Math.max(rowHeight, h);
+            width = Math.max(width, x);
+        }
+        int height = y + rowHeight;
+        return new Packing(packed, decoder.obtain(width, height, config), decoder);
+    }
+
+    /**
+     * Decodes {@code sprite} at the size of its slot in {@code packing} and copies it in. Safe to
+     * call for different sprites of one packing from several threads at once.
+     */
+    public void decodeSprite(Packing packing, int sprite) {
+        place(packing, sprite, decodeAt(packing, sprite));
+    }
+
+    /** Decodes {@code sprite} in ARGB_8888 at the size of its slot in {@code packing}. */
+    protected Bitmap decodeAt(Packing packing, int sprite) {
+        return decoder.decode(resIds[sprite], packing.sources[sprite].width(),
+                Bitmap.Config.ARGB_8888);
+    }
+
+    /** Copies {@code bitmap} into {@code sprite}'s slot in {@code packing} and recycles it. */
+    protected void place(Packing packing, int sprite, Bitmap bitmap) {
+        Rect dst = packing.sources[sprite];
+        synchronized (packing) {
+            packing.canvas.drawBitmap(bitmap, null, dst, packing.paint);
+        }
+        decoder.recycle(bitmap);
+    }
+
+    /**
+     * Makes a fully decoded {@code packing} current, recycling the previous atlas. Callers must
+     * make sure nothing is drawing from this atlas meanwhile.
+     */
+    public void install(Packing packing) {
+        for (int i = 0; i < sources.length; i++) {
+            sources[i].set(packing.sources[i]);
+        }
+        decoder.recycle(atlas);
+        atlas = packing.bitmap;
+    }
+
+    /** Whether a packing has been installed, so the sprites can be drawn. */
+    public boolean isPacked() {
+        return atlas != null;
+    }
+
+    /** Recycles the atlas; nothing can be drawn until another packing is installed. */
+    public void release() {
+        decoder.recycle(atlas);
+        atlas = null;
+    }
+
+    /** Bytes held by the packed atlas, 0 if there isn't one. */
+    public long getByteCount() {
+        return atlas == null ? 0 : atlas.getAllocationByteCount();
+    }
+
+    /**
+     * Decodes each sprite in turn at {@code scale} and copies it into a freshly packed atlas,
+     * replacing and recycling the previous one. Only one source bitmap is alive at a time besides
+     * the atlas itself.
+     */
+    public void pack(float scale) {
+        Packing packing = layout(scale);
+        for (int i = 0; i < resIds.length; i++) {
+            decodeSprite(packing, i);
+        }
+        install(packing);
+    }
+
+    public Bitmap getBitmap() {
+        return atlas;
+    }
+
+    public Rect getSource(int sprite) {
+        return sources[sprite];
+    }
+
+    /** Packed width of {@code sprite}, i.e. its size on screen. */
+    public int getWidth(int sprite) {
+        return sources[sprite].width();
+    }
+
+    /** Packed height of {@code sprite}, i.e. its size on screen. */
+    public int getHeight(int sprite) {
+        return sources[sprite].height();
+    }
+
+    public int getIntrinsicWidth(int sprite) {
+        return intrinsicWidths[sprite];
+    }
+
+    public int getIntrinsicHeight(int sprite) {
+        return intrinsicHeights[sprite];
+    }
+
+    public void draw(Canvas canvas, int sprite, RectF dst, Paint paint) {
+        canvas.drawBitmap(atlas, sources[sprite], dst, paint);
+    }
+}
@@ -0,0 +1,136 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.RectF;
+
+/**
+ * A {@link SpriteAtlas} of alpha-only layers coloured at draw time by a {@link HandTheme}. Each
+ * sprite is a mask of its whole shape plus, optionally, an accent layer covering the part drawn
+ * in its own colour; both are packed ALPHA_8, a quarter of a full-colour sprite each. The accent's
+ * coverage is taken out of the mask as they are packed, so the mask never shows through the
+ * accent's soft edges.
+ *
+ * <p>Sprites are addressed as in {@link SpriteAtlas} by their position in the mask array; the
+ * accent layers are packed after the masks and only reached through {@link #draw}. Not
+ * thread-safe: draw from one thread.
+ */
+public class TintedAtlas extends SpriteAtlas {
+
+    private final int[] accentSprites;
+    private final Paint maskPaint = new Paint();
+    private final Paint accentPaint = new Paint();
+    private PorterDuffColorFilter maskFilter;
+    private final PorterDuffColorFilter[] accentFilters;
+
+    /**
+     * {@code accents} is parallel to {@code masks}, with 0 for sprites that have no accent layer.
+     * Draws white until {@link #setTheme} is called.
+     */
+    public TintedAtlas(BitmapDecoder decoder, int[] masks, int[] accents) {
+        super(decoder, layers(masks, accents), Bitmap.Config.ALPHA_8);
+        accentSprites = new int[masks.length];
+        int next = masks.length;
+        for (int i = 0; i < masks.length; i++) {
+            accentSprites[i] = accents[i] == 0 ? -1 : next++;
+        }
+        accentFilters = new PorterDuffColorFilter[masks.length];
+        setTheme(HandTheme.solid(0xFFFFFFFF, masks.length));
+    }
+
+    private static int[] layers(int[] masks, int[] accents) {
+        int count = masks.length;
+        for (int accent : accents) {
+            if (accent != 0) {
+                count++;
+            }
+        }
+        int[] layers = new int[count];
+        System.arraycopy(masks, 0, layers, 0, masks.length);
+        int next = masks.length;
+        for (int accent : accents) {
+            if (accent != 0) {
+                layers[next++] = accent;
+            }
+        }
+        return layers;
+    }
+
+    /**
+     * Decodes a mask together with its accent, carving the accent out of the mask, and does
+     * nothing for the accent layers themselves.
+     */
+    @Override
+    public void decodeSprite(Packing packing, int sprite) {
+        if (sprite >= accentSprites.length) {
+            return;
+        }
+        int accent = accentSprites[sprite];
+        if (accent < 0) {
+            super.decodeSprite(packing, sprite);
+            return;
+        }
+        Bitmap mask = decodeAt(packing, sprite);
+        Bitmap accentLayer = decodeAt(packing, accent);
+        carve(mask, accentLayer);
+        place(packing, sprite, mask);
+        place(packing, accent, accentLayer);
+    }
+
+    private static void carve(Bitmap mask, Bitmap accent) {
+        int width = Math.min(mask.getWidth(), accent.getWidth());
+        int height = Math.min(mask.getHeight(), accent.getHeight());
+        int[] maskPixels = new int[width * height];
+        int[] accentPixels = new int[width * height];
+        mask.getPixels(maskPixels, 0, width, 0, 0, width, height);
+        accent.getPixels(accentPixels, 0, width, 0, 0, width, height);
+        carve(maskPixels, accentPixels);
+        mask.setPixels(maskPixels, 0, width, 0, 0, width, height);
+    }
+
+    /*
+     * Leaves each mask pixel at (m - a) / (1 - a) under an accent of coverage a, so the accent
+     * drawn over it brings the total back to exactly m with nothing of the mask's colour left
+     * under it.
+     */
+    static void carve(int[] maskPixels, int[] accentPixels) {
+        for (int i = 0; i < maskPixels.length; i++) {
+            int a = accentPixels[i] >>> 24;
+            if (a == 0) {
+                continue;
+            }
+            int m = maskPixels[i] >>> 24;
+            int left = a == 255 ? 0 : Math.max(0, Math.round(255f * (m - a) / (255 - a)));
+            maskPixels[i] = left << 24 | (maskPixels[i] & 0xFFFFFF);
+        }
+    }
+
+    /** Colours every sprite from {@code theme}, from the next draw on. */
+    public void setTheme(HandTheme theme) {
+        maskFilter = new PorterDuffColorFilter(theme.getMask(), PorterDuff.Mode.SRC_IN);
+        for (int i = 0; i < accentSprites.length; i++) {
+            accentFilters[i] = accentSprites[i] < 0 ? null
+                    : new PorterDuffColorFilter(theme.getAccent(i), PorterDuff.Mode.SRC_IN);
+        }
+    }
+
+    /**
+     * Draws {@code sprite}'s mask and then its accent over it, in the theme's colours. Both keep
+     * {@code paint}'s shadow, as the carved mask alone doesn't cover the accent's outline.
+     */
+    @Override
+    public void draw(Canvas canvas, int sprite, RectF dst, Paint paint) {
+        maskPaint.set(paint);
+        maskPaint.setColorFilter(maskFilter);
+        super.draw(canvas, sprite, dst, maskPaint);
+        int accent = accentSprites[sprite];
+        if (accent >= 0) {
+            accentPaint.set(paint);
+            accentPaint.setColorFilter(accentFilters[sprite]);
+            super.draw(canvas, accent, dst, accentPaint);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.File;
@@ -11,30 +12,170 @@ import java.io.FileOutputStream;
 import java.util.concurrent.TimeUnit;
 
 import static android.hardware.SensorManager.SENSOR_STATUS_ACCURACY_HIGH;
+import static android.hardware.SensorManager.SENSOR_STATUS_ACCURACY_MEDIUM;
 
 /**
  * Created by Alex on 16/01/2018.
+ *
+ * Reads the first value of any single-value sensor, not just the barometer: the
+ * {@link SensorHub} uses it for temperature, humidity and light as well.
  */
 
 public class pressureReader implements SensorEventListener {
-    public float millibar;
-    public long time;
+    /*
+     * The latest reading, published with a sequence lock: the sensor thread makes the sequence
+     * odd, writes the fields and makes it even again, and readers retry until they see the same
+     * even sequence either side of their reads. Everything is volatile so the reads can't be
+     * reordered past the sequence checks; with a single writer that is all the locking needed.
+     */
+    private volatile int sequence;
+    private volatile float millibar;
+    private volatile long time;
+    private volatile int accuracy;
+
+    /* Accuracy last reported by the sensor, stamped onto each reading as it's published. */
+    private int currentAccuracy = SENSOR_STATUS_ACCURACY_HIGH;
     private boolean highAcc=true;
+    private Listener listener;
+
+    /** Most readings one burst can collect. */
+    public static final int MAX_BURST = 16;
+
+    /*
+     * Burst mode: readings are collected here instead of being published, and only their trimmed
+     * mean is published when the burst is full or its window has passed. Sensor thread only.
+     */
+    private final float[] burstValues = new float[MAX_BURST];
+    private int burstSize;
+    private int burstTarget;
+    private long burstWindowNanos;
+    private long burstFirstNanos;
+    private long burstStartedNanos;
+    private long sensorOnNanos;
+    private int bursts;
+
+    private final Clock clock;
+
+    /** Elapsed realtime in nanoseconds, which burst sensor-on time is measured in. */
+    interface Clock {
+        long elapsedRealtimeNanos();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long elapsedRealtimeNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+
+    public pressureReader() {
+        this(SYSTEM_CLOCK);
+    }
+
+    /** A reader timing bursts by {@code clock}, e.g. a test's. */
+    pressureReader(Clock clock) {
+        this.clock = clock;
+    }
+
+    /** Receives every reading on the thread the sensor was registered with. */
+    public interface Listener {
+        void onPressure(float millibar, long timestampNanos);
+    }
+
+    /** A consistent copy of one reading, filled in by {@link #read}. Reuse it. */
+    public static final class Sample {
+        public float millibar;
+        /** Sensor event timestamp, elapsed realtime nanoseconds. */
+        public long time;
+        /** Sensor accuracy when the reading was taken, a SENSOR_STATUS_ constant. */
+        public int accuracy;
+        /** Changes with every reading; compare to see whether there is a new one. */
+        public int sequence;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Copies the latest reading into {@code out} without locking. Safe from any thread.
+     *
+     * @return false if there has been no reading yet
+     */
+    public boolean read(Sample out) {
+        while (true) {
+            int before = sequence;
+            if ((before & 1) != 0) {
+                // The writer is mid-update; it only has a few stores left.
+                Thread.yield();
+                continue;
+            }
+            float m = millibar;
+            long t = time;
+            int a = accuracy;
+            if (sequence == before) {
+                out.millibar = m;
+                out.time = t;
+                out.accuracy = a;
+                out.sequence = before;
+                return before != 0;
+            }
+        }
+    }
+
+    /** Changes with every reading; cheaper than {@link #read} for change detection. */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Switches to burst mode: the next {@code count} readings (at most {@link #MAX_BURST}), or
+     * those arriving within {@code windowNanos} of the first, are reduced to one trimmed mean,
+     * which is published and passed to the listener as a single reading. Readings taken while the
+     * sensor reports low accuracy are left out. Call on the sensor thread, or before registering,
+     * just before the sensor is switched on; the time from here to the published value counts as
+     * sensor-on time.
+     */
+    public void startBurst(int count, long windowNanos) {
+        burstTarget = Math.min(Math.max(count, 1), MAX_BURST);
+        burstWindowNanos = windowNanos;
+        burstSize = 0;
+        burstFirstNanos = 0;
+        burstStartedNanos = clock.elapsedRealtimeNanos();
+    }
+
+    /** Sensor-on milliseconds per burst sample, or 0 before the first burst completes. */
+    public float getSensorOnMsPerSample() {
+        return bursts == 0 ? 0f : sensorOnNanos / 1000000f / bursts;
+    }
+
     @Override
     public final void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Do something here if sensor accuracy changes.
+        currentAccuracy = accuracy;
 
-        if(accuracy==SENSOR_STATUS_ACCURACY_HIGH){
-            highAcc=true;
-        }
+        // Low and unreliable readings are kept out of bursts.
+        highAcc = accuracy == SENSOR_STATUS_ACCURACY_HIGH
+                || accuracy == SENSOR_STATUS_ACCURACY_MEDIUM;
     }
 
     @Override
     public final void onSensorChanged(SensorEvent event) {
+        onReading(event.values[0], event.timestamp);
+    }
+
+    /* Sensor thread only: one reading, from the sensor or a test driving it directly. */
+    void onReading(float value, long timestamp) {
+
+        if (burstTarget > 0) {
+            collectBurst(value, timestamp);
+            return;
+        }
 
         //if(highAcc==true) {
-            millibar = event.values[0];
-            time=event.timestamp;
+            publish(value, timestamp);
+            if (listener != null) {
+                listener.onPressure(value, timestamp);
+            }
 
 
           //  highAcc = false;
@@ -45,4 +186,64 @@ public class pressureReader implements SensorEventListener {
 
     }
 
+    private void collectBurst(float value, long timestamp) {
+        if (burstSize == 0) {
+            burstFirstNanos = timestamp;
+        }
+        if (highAcc) {
+            burstValues[burstSize++] = value;
+        }
+        if (burstSize < burstTarget && timestamp - burstFirstNanos < burstWindowNanos) {
+            return;
+        }
+        if (burstSize == 0) {
+            // A whole window of low-accuracy readings; start over from the next one.
+            return;
+        }
+        float filtered = trimmedMean(burstValues, burstSize);
+        burstTarget = 0;
+        sensorOnNanos += clock.elapsedRealtimeNanos() - burstStartedNanos;
+        bursts++;
+        publish(filtered, timestamp);
+        if (listener != null) {
+            listener.onPressure(filtered, timestamp);
+        }
+    }
+
+    /*
+     * Mean of the middle half of values[0..size), sorted in place; the median for fewer than
+     * four. Insertion sort, as bursts are a handful of readings.
+     */
+    private static float trimmedMean(float[] values, int size) {
+        for (int i = 1; i < size; i++) {
+            float v = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > v) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+        int trim = size / 4;
+        if (trim == 0) {
+            return size % 2 == 1 ? values[size / 2]
+                    : (values[size / 2 - 1] + values[size / 2]) / 2f;
+        }
+        float sum = 0;
+        for (int i = trim; i < size - trim; i++) {
+            sum += values[i];
+        }
+        return sum / (size - 2 * trim);
+    }
+
+    /* Sensor thread only: there must be a single writer. */
+    private void publish(float value, long timestamp) {
+        int s = sequence;
+        sequence = s + 1;
+        millibar = value;
+        time = timestamp;
+        accuracy = currentAccuracy;
+        sequence = s + 2;
+    }
+
 }
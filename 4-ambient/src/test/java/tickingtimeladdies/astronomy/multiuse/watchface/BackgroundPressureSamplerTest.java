@@ -0,0 +1,74 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class BackgroundPressureSamplerTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /** Takes wake-ups at {@code now} until refused, returning how many were allowed. */
+    private static int drain(SharedPreferences prefs, long now) {
+        int taken = 0;
+        while (BackgroundPressureSampler.takeWakeup(prefs, now)) {
+            taken++;
+            if (taken > 100) {
+                break;
+            }
+        }
+        return taken;
+    }
+
+    @Test
+    public void budgetRefillsEveryHour() {
+        SharedPreferences prefs = new FakeSharedPreferences();
+        long now = 5 * HOUR;
+        for (int hour = 0; hour < 5; hour++) {
+            assertEquals(BackgroundPressureSampler.WAKEUPS_PER_HOUR, drain(prefs, now));
+            assertFalse(BackgroundPressureSampler.takeWakeup(prefs, now + HOUR - 1));
+            now += HOUR;
+        }
+    }
+
+    @Test
+    public void firstWindowStartsRightAfterBoot() {
+        // Elapsed realtime is small just after boot; a missing window must still reset.
+        SharedPreferences prefs = new FakeSharedPreferences();
+        assertEquals(BackgroundPressureSampler.WAKEUPS_PER_HOUR, drain(prefs, 1000));
+        assertEquals(BackgroundPressureSampler.WAKEUPS_PER_HOUR, drain(prefs, 1000 + HOUR));
+    }
+
+    @Test
+    public void windowFromBeforeAReboot() {
+        SharedPreferences prefs = new FakeSharedPreferences();
+        drain(prefs, 50 * HOUR);
+        // Rebooted: elapsed realtime is back near zero, behind the stored window.
+        assertTrue(BackgroundPressureSampler.takeWakeup(prefs, 2000));
+    }
+
+    @Test
+    public void spreadWakeupsShareTheWindow() {
+        SharedPreferences prefs = new FakeSharedPreferences();
+        long start = 10 * HOUR;
+        for (int i = 0; i < BackgroundPressureSampler.WAKEUPS_PER_HOUR; i++) {
+            assertTrue(BackgroundPressureSampler.takeWakeup(prefs, start + i * 60000L));
+        }
+        assertFalse(BackgroundPressureSampler.takeWakeup(prefs, start + 30 * 60000L));
+        assertTrue(BackgroundPressureSampler.takeWakeup(prefs, start + HOUR));
+    }
+
+    @Test
+    public void rescheduledAfterBootOnlyIfItWasScheduled() {
+        SharedPreferences prefs = new FakeSharedPreferences();
+        assertFalse(BackgroundPressureSampler.shouldRescheduleOnBoot(prefs));
+        prefs.edit().putBoolean("scheduled", true).apply();
+        assertTrue(BackgroundPressureSampler.shouldRescheduleOnBoot(prefs));
+    }
+}
@@ -0,0 +1,66 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * The battery ring's per-frame read, BatteryState.getSweep, against the BatteryManager
+ * capacity query it replaced. On a watch that query is a binder call into the battery service;
+ * here the shadow answers from a map, so the old figure is a floor and the real gap is wider.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class BatteryStateBenchmark {
+
+    private static final int OPS = 1000000;
+
+    @Test
+    public void perFrameSweep() {
+        Context context = RuntimeEnvironment.application;
+        final BatteryState battery = new BatteryState(new BatteryState.Listener() {
+            @Override
+            public void onBatteryChanged(boolean arcChanged) {
+            }
+        });
+        battery.onReceive(context, new Intent(Intent.ACTION_BATTERY_CHANGED)
+                .putExtra(BatteryManager.EXTRA_LEVEL, 75)
+                .putExtra(BatteryManager.EXTRA_SCALE, 100));
+        double sweepNanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                float total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += battery.getSweep();
+                }
+                return total;
+            }
+        }.nanosPerOp("BatteryState.getSweep", OPS);
+
+        final BatteryManager bm =
+                (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        shadowOf(bm).setIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY, 75);
+        double queryNanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                float total = 0;
+                for (int i = 0; i < ops; i++) {
+                    total += 3.6f * bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+                }
+                return total;
+            }
+        }.nanosPerOp("BatteryManager.getIntProperty(CAPACITY) per frame", OPS);
+
+        assertTrue(sweepNanos < Benchmark.FRAME_BUDGET_NANOS);
+        assertTrue(sweepNanos < queryNanos);
+    }
+}
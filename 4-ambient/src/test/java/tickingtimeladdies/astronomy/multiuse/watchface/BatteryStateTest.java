@@ -0,0 +1,91 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+import android.os.BatteryManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class BatteryStateTest {
+
+    private final List<Boolean> changes = new ArrayList<Boolean>();
+    private BatteryState battery;
+
+    @Before
+    public void setUp() {
+        battery = new BatteryState(new BatteryState.Listener() {
+            @Override
+            public void onBatteryChanged(boolean arcChanged) {
+                changes.add(arcChanged);
+            }
+        });
+    }
+
+    private static Intent batteryChanged(int level, int scale, int status) {
+        return new Intent(Intent.ACTION_BATTERY_CHANGED)
+                .putExtra(BatteryManager.EXTRA_LEVEL, level)
+                .putExtra(BatteryManager.EXTRA_SCALE, scale)
+                .putExtra(BatteryManager.EXTRA_STATUS, status);
+    }
+
+    private void receive(int level, int scale, int status) {
+        battery.onReceive(RuntimeEnvironment.application, batteryChanged(level, scale, status));
+    }
+
+    @Test
+    public void unknownUntilTheFirstBroadcast() {
+        assertEquals(-1, battery.getLevel());
+        assertEquals(0f, battery.getSweep(), 0f);
+    }
+
+    @Test
+    public void scalesLevelAndSweep() {
+        receive(150, 200, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        assertEquals(75, battery.getLevel());
+        assertEquals(270f, battery.getSweep(), 1e-3f);
+        assertFalse(battery.isCharging());
+    }
+
+    @Test
+    public void notifiesOnlyWhenSomethingShownChanges() {
+        receive(50, 100, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        // Voltage and temperature broadcasts repeat the same level.
+        receive(50, 100, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        receive(50, 100, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0));
+    }
+
+    @Test
+    public void chargingAloneLeavesTheArc() {
+        receive(50, 100, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        receive(50, 100, BatteryManager.BATTERY_STATUS_CHARGING);
+        assertTrue(battery.isCharging());
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(1));
+
+        receive(100, 100, BatteryManager.BATTERY_STATUS_FULL);
+        assertTrue(battery.isCharging());
+        assertTrue(changes.get(2));
+    }
+
+    @Test
+    public void ignoresBroadcastsWithoutALevel() {
+        battery.onReceive(RuntimeEnvironment.application, new Intent(Intent.ACTION_BATTERY_CHANGED));
+        assertEquals(-1, battery.getLevel());
+        assertTrue(changes.isEmpty());
+    }
+}
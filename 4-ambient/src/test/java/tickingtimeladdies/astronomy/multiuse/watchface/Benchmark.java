@@ -0,0 +1,38 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+/**
+ * Minimal JVM microbenchmark for the unit tests: warms up, then reports the best of several
+ * timed runs in nanoseconds per operation. The best run is the one least disturbed by the JIT,
+ * GC and other processes, which is what a per-frame budget should be compared against. Numbers
+ * are for the build host and only indicate relative cost on a watch.
+ */
+abstract class Benchmark {
+
+    /** 1% of a 60 Hz frame: anything called per frame should stay well under this. */
+    static final double FRAME_BUDGET_NANOS = 1e9 / 60 / 100;
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    /** Keeps results alive so the JIT can't drop the work. */
+    private static volatile double sink;
+
+    /** Runs the operation {@code ops} times and returns something derived from the results. */
+    protected abstract double run(int ops);
+
+    /** Best time per operation over the timed runs, printed as {@code name: n ns/op}. */
+    final double nanosPerOp(String name, int ops) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink += run(ops);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            sink += run(ops);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double nanos = best / (double) ops;
+        System.out.println(name + ": " + String.format("%.1f", nanos) + " ns/op");
+        return nanos;
+    }
+}
@@ -0,0 +1,58 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class BitmapDecoderTest {
+
+    @Test
+    public void jpegSubsamplesDownToTheTarget() {
+        assertEquals(4, BitmapDecoder.sampleSize(1600, 400, true));
+        assertEquals(2, BitmapDecoder.sampleSize(1599, 400, true));
+        assertEquals(1, BitmapDecoder.sampleSize(799, 400, true));
+    }
+
+    @Test
+    public void otherCodecsStopAtTwiceTheTarget() {
+        assertEquals(2, BitmapDecoder.sampleSize(1600, 400, false));
+        assertEquals(1, BitmapDecoder.sampleSize(1599, 400, false));
+        assertEquals(4, BitmapDecoder.sampleSize(3200, 400, false));
+    }
+
+    @Test
+    public void neverSubsamplesBelowTheTarget() {
+        assertEquals(1, BitmapDecoder.sampleSize(400, 400, true));
+        assertEquals(1, BitmapDecoder.sampleSize(200, 400, true));
+        assertEquals(1, BitmapDecoder.sampleSize(200, 400, false));
+    }
+
+    @Test
+    public void byteCountFollowsTheConfig() {
+        assertEquals(100, BitmapDecoder.byteCount(10, 10, Bitmap.Config.ALPHA_8));
+        assertEquals(200, BitmapDecoder.byteCount(10, 10, Bitmap.Config.RGB_565));
+        assertEquals(200, BitmapDecoder.byteCount(10, 10, Bitmap.Config.ARGB_4444));
+        assertEquals(400, BitmapDecoder.byteCount(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    /* The decoded asset figures for a 400x400 screen: the atlas and both backgrounds. */
+    @Test
+    public void residentAssetBytesBeforeAndAfter() {
+        int atlas = BitmapDecoder.byteCount(553, 184, Bitmap.Config.ARGB_8888);
+        int before = BitmapDecoder.byteCount(400, 400, Bitmap.Config.ARGB_8888);
+        int after = BitmapDecoder.byteCount(400, 400, Bitmap.Config.RGB_565);
+
+        assertEquals(407008, atlas);
+        assertEquals(640000, before);
+        assertEquals(320000, after);
+        assertEquals(1687008, atlas + 2 * before);
+        assertEquals(1047008, atlas + 2 * after);
+    }
+}
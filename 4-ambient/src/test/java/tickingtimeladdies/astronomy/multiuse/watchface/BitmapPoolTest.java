@@ -0,0 +1,131 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26, shadows = BitmapPoolTest.ShadowAllocatedBitmap.class)
+public class BitmapPoolTest {
+
+    /** Reports a fresh bitmap's allocation as its pixel bytes, which the stock shadow leaves 0. */
+    @Implements(Bitmap.class)
+    public static class ShadowAllocatedBitmap extends ShadowBitmap {
+        @Implementation
+        public int getAllocationByteCount() {
+            return isRecycled() ? 0 : getByteCount();
+        }
+    }
+
+    private static final int SIZE = 400;
+    private static final int SCREEN_ARGB = SIZE * SIZE * 4;
+    private static final int SCREEN_RGB_565 = SIZE * SIZE * 2;
+
+    private BitmapPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool();
+        // As the engine caps it: two screens of ARGB_8888.
+        pool.setMaxBytes(2L * SCREEN_ARGB);
+    }
+
+    private static Bitmap screen(Bitmap.Config config) {
+        return Bitmap.createBitmap(SIZE, SIZE, config);
+    }
+
+    @Test
+    public void putAndTakeCountAllocatedBytes() {
+        Bitmap argb = screen(Bitmap.Config.ARGB_8888);
+        Bitmap rgb565 = screen(Bitmap.Config.RGB_565);
+        pool.put(argb);
+        assertEquals(640000, pool.getByteCount());
+        pool.put(rgb565);
+        assertEquals(960000, pool.getByteCount());
+
+        assertSame(argb, pool.take(SCREEN_RGB_565 + 1));
+        assertEquals(320000, pool.getByteCount());
+        assertSame(rgb565, pool.take(SCREEN_RGB_565));
+        assertEquals(0, pool.getByteCount());
+        assertFalse(argb.isRecycled());
+    }
+
+    @Test
+    public void takeChoosesTheSmallestThatFits() {
+        Bitmap argb = screen(Bitmap.Config.ARGB_8888);
+        Bitmap rgb565 = screen(Bitmap.Config.RGB_565);
+        pool.put(argb);
+        pool.put(rgb565);
+
+        // An RGB_565 background fits either, so it gets the smaller one.
+        assertSame(rgb565, pool.take(SCREEN_RGB_565));
+        pool.put(rgb565);
+        // A 553x184 ARGB_8888 atlas, 407,008 bytes, only fits in the ARGB_8888 screen.
+        assertSame(argb, pool.take(553 * 184 * 4));
+        assertNull(pool.take(SCREEN_RGB_565 + 1));
+        assertEquals(320000, pool.getByteCount());
+    }
+
+    @Test
+    public void trimRecyclesTheOldestOverTheLimit() {
+        Bitmap first = screen(Bitmap.Config.ARGB_8888);
+        Bitmap second = screen(Bitmap.Config.ARGB_8888);
+        Bitmap third = screen(Bitmap.Config.ARGB_8888);
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+
+        assertTrue(first.isRecycled());
+        assertFalse(second.isRecycled());
+        assertEquals(1280000, pool.getByteCount());
+
+        pool.setMaxBytes(SCREEN_ARGB);
+        assertTrue(second.isRecycled());
+        assertEquals(640000, pool.getByteCount());
+        assertSame(third, pool.take(1));
+    }
+
+    @Test
+    public void unusableBitmapsAreRecycledNotHeld() {
+        Bitmap immutable = screen(Bitmap.Config.ARGB_8888);
+        shadowOf(immutable).setMutable(false);
+        pool.put(immutable);
+        assertTrue(immutable.isRecycled());
+
+        Bitmap tooBig = Bitmap.createBitmap(SIZE, 3 * SIZE, Bitmap.Config.ARGB_8888);
+        pool.put(tooBig);
+        assertTrue(tooBig.isRecycled());
+
+        pool.put(null);
+        pool.put(immutable);
+        assertEquals(0, pool.getByteCount());
+    }
+
+    @Test
+    public void clearRecyclesEverything() {
+        Bitmap argb = screen(Bitmap.Config.ARGB_8888);
+        Bitmap rgb565 = screen(Bitmap.Config.RGB_565);
+        pool.put(argb);
+        pool.put(rgb565);
+        pool.clear();
+
+        assertTrue(argb.isRecycled());
+        assertTrue(rgb565.isRecycled());
+        assertEquals(0, pool.getByteCount());
+        assertNull(pool.take(1));
+    }
+}
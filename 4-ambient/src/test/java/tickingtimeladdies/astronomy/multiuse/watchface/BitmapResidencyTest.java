@@ -0,0 +1,154 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+public class BitmapResidencyTest {
+
+    private static final int AMBIENT = 1;
+    private static final int INTERACTIVE = 2;
+
+    /** Holds {@code bytes} once installed; loads wait for the test to finish them. */
+    private static final class FakeResident implements BitmapResidency.Resident {
+        final long bytes;
+        BitmapResidency.Entry entry;
+        int ticket;
+        int loads;
+        int releases;
+        boolean installed;
+
+        FakeResident(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long getByteCount() {
+            return installed ? bytes : 0;
+        }
+
+        @Override
+        public void load(BitmapResidency.Entry entry, int ticket) {
+            this.entry = entry;
+            this.ticket = ticket;
+            loads++;
+        }
+
+        @Override
+        public void release() {
+            installed = false;
+            releases++;
+        }
+    }
+
+    private final BitmapResidency residency = new BitmapResidency(100);
+
+    private FakeResident register(int modes, int kind, long bytes) {
+        FakeResident resident = new FakeResident(bytes);
+        residency.register("set", modes, kind, resident);
+        return resident;
+    }
+
+    /* Finishes the pending load the way the engine does. */
+    private boolean finishLoad(FakeResident resident, int ticket) {
+        if (!residency.commit(resident.entry, ticket)) {
+            return false;
+        }
+        resident.installed = true;
+        residency.onInstalled();
+        return true;
+    }
+
+    @Test
+    public void spritesAreReleasedWhenTheirModeIsLeft() {
+        FakeResident ambient = register(AMBIENT, BitmapResidency.SPRITES, 30);
+        FakeResident both = register(AMBIENT | INTERACTIVE, BitmapResidency.SPRITES, 20);
+        residency.setMode(AMBIENT);
+        assertTrue(finishLoad(ambient, ambient.ticket));
+        assertTrue(finishLoad(both, both.ticket));
+        assertEquals(50, residency.getByteCount());
+
+        residency.setMode(INTERACTIVE);
+        assertEquals(1, ambient.releases);
+        assertFalse(ambient.entry.isResident());
+        assertEquals(0, both.releases);
+        assertEquals(20, residency.getByteCount());
+        assertEquals(1, residency.getReleases());
+        assertEquals(30, residency.getReleasedBytes());
+
+        residency.setMode(INTERACTIVE);
+        assertEquals(1, ambient.loads);
+    }
+
+    @Test
+    public void staleTicketIsRejected() {
+        FakeResident ambient = register(AMBIENT, BitmapResidency.SPRITES, 30);
+        residency.setMode(AMBIENT);
+        int stale = ambient.ticket;
+        // Left and re-entered while the first load was still running.
+        residency.setMode(INTERACTIVE);
+        residency.setMode(AMBIENT);
+        assertEquals(2, ambient.loads);
+
+        assertFalse(finishLoad(ambient, stale));
+        assertFalse(ambient.entry.isResident());
+        assertTrue(finishLoad(ambient, ambient.ticket));
+        assertTrue(ambient.entry.isResident());
+        // A load that never finished held nothing to release.
+        assertEquals(0, ambient.releases);
+        assertEquals(0, residency.getReleases());
+    }
+
+    @Test
+    public void cachesGoBeforeDecodedSetsOverBudget() {
+        FakeResident decoded = register(AMBIENT, BitmapResidency.DECODED, 40);
+        FakeResident cache = register(AMBIENT, BitmapResidency.CACHE, 40);
+        FakeResident interactive = register(INTERACTIVE, BitmapResidency.SPRITES, 50);
+        residency.setMode(AMBIENT);
+        finishLoad(decoded, decoded.ticket);
+        finishLoad(cache, cache.ticket);
+
+        // Both are kept while inactive, until the interactive set takes the total over.
+        residency.setMode(INTERACTIVE);
+        assertEquals(80, residency.getByteCount());
+        finishLoad(interactive, interactive.ticket);
+
+        assertEquals(1, cache.releases);
+        assertEquals(0, decoded.releases);
+        assertTrue(decoded.entry.isResident());
+        assertEquals(90, residency.getByteCount());
+
+        // Tighter still, the decoded set goes too; the active set stays even over budget.
+        residency.setBudget(40);
+        assertEquals(1, decoded.releases);
+        assertEquals(0, interactive.releases);
+        assertEquals(50, residency.getByteCount());
+    }
+
+    @Test
+    public void trimMemoryCompleteReleasesEverything() {
+        FakeResident sprites = register(AMBIENT, BitmapResidency.SPRITES, 30);
+        FakeResident decoded = register(AMBIENT, BitmapResidency.DECODED, 20);
+        FakeResident cache = register(AMBIENT, BitmapResidency.CACHE, 10);
+        residency.setMode(AMBIENT);
+        finishLoad(sprites, sprites.ticket);
+        finishLoad(decoded, decoded.ticket);
+        finishLoad(cache, cache.ticket);
+
+        // Lower levels leave the active mode's sets alone.
+        residency.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(60, residency.getByteCount());
+
+        residency.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, residency.getByteCount());
+        assertEquals(1, sprites.releases);
+        assertEquals(1, decoded.releases);
+        assertEquals(1, cache.releases);
+        assertEquals(3, residency.getReleases());
+        assertEquals(60, residency.getReleasedBytes());
+    }
+}
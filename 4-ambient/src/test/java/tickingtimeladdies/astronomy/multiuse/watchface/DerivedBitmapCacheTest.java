@@ -0,0 +1,177 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class DerivedBitmapCacheTest {
+
+    private static final long ASSET_VERSION = 1539734400000L;
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final String NAME = "atlas_400x400";
+    /* Where the pixels start, after the header. */
+    private static final int PIXELS_AT = 32;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private BitmapDecoder decoder;
+    private DerivedBitmapCache cache;
+
+    @Before
+    public void setUp() {
+        decoder = new BitmapDecoder(RuntimeEnvironment.application.getResources(),
+                new BitmapPool());
+        cache = cacheAt(ASSET_VERSION);
+    }
+
+    private DerivedBitmapCache cacheAt(long assetVersion) {
+        return new DerivedBitmapCache(folder.getRoot(), assetVersion, decoder);
+    }
+
+    private File entry() {
+        return new File(folder.getRoot(), NAME + ".px");
+    }
+
+    private static int[] pattern() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | i * 0x010203;
+        }
+        return pixels;
+    }
+
+    private static int[] pixels(Bitmap bitmap) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(),
+                bitmap.getHeight());
+        return pixels;
+    }
+
+    private void storePattern() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pattern(), 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        cache.store(NAME, bitmap);
+    }
+
+    /* Neither kind of load finds anything, and the target is left blank. */
+    private void assertMiss(DerivedBitmapCache cache) {
+        assertNull(cache.load(NAME));
+        Bitmap target = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        assertFalse(cache.loadInto(NAME, target));
+        assertArrayEquals(new int[WIDTH * HEIGHT], pixels(target));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void roundTrip() {
+        storePattern();
+        assertFalse(new File(folder.getRoot(), NAME + ".tmp").exists());
+
+        Bitmap loaded = cache.load(NAME);
+        assertNotNull(loaded);
+        assertEquals(WIDTH, loaded.getWidth());
+        assertEquals(HEIGHT, loaded.getHeight());
+        assertEquals(Bitmap.Config.ARGB_8888, loaded.getConfig());
+        assertArrayEquals(pattern(), pixels(loaded));
+
+        Bitmap target = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        assertTrue(cache.loadInto(NAME, target));
+        assertArrayEquals(pattern(), pixels(target));
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void missingEntryIsAMiss() {
+        assertMiss(cache);
+    }
+
+    @Test
+    public void otherAssetVersionIsAMiss() {
+        storePattern();
+        assertMiss(cacheAt(ASSET_VERSION + 1));
+    }
+
+    @Test
+    public void otherSizeOrConfigIsAMiss() {
+        storePattern();
+        Bitmap turned = Bitmap.createBitmap(HEIGHT, WIDTH, Bitmap.Config.ARGB_8888);
+        assertFalse(cache.loadInto(NAME, turned));
+        Bitmap rgb565 = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.RGB_565);
+        assertFalse(cache.loadInto(NAME, rgb565));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void corruptedPixelIsAMiss() throws IOException {
+        storePattern();
+        RandomAccessFile raf = new RandomAccessFile(entry(), "rw");
+        try {
+            raf.seek(PIXELS_AT + 5);
+            int b = raf.read();
+            raf.seek(PIXELS_AT + 5);
+            raf.write(b ^ 0x01);
+        } finally {
+            raf.close();
+        }
+        assertMiss(cache);
+    }
+
+    @Test
+    public void truncatedEntryIsAMiss() throws IOException {
+        storePattern();
+        RandomAccessFile raf = new RandomAccessFile(entry(), "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        assertMiss(cache);
+    }
+
+    @Test
+    public void truncatedHeaderIsAMiss() throws IOException {
+        storePattern();
+        RandomAccessFile raf = new RandomAccessFile(entry(), "rw");
+        try {
+            raf.setLength(PIXELS_AT - 1);
+        } finally {
+            raf.close();
+        }
+        assertMiss(cache);
+    }
+
+    @Test
+    public void storeReplacesAStaleEntry() {
+        storePattern();
+        cache = cacheAt(ASSET_VERSION + 1);
+        storePattern();
+        Bitmap loaded = cache.load(NAME);
+        assertNotNull(loaded);
+        assertArrayEquals(pattern(), pixels(loaded));
+    }
+}
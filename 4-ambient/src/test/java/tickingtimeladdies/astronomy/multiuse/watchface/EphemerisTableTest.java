@@ -0,0 +1,99 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+public class EphemerisTableTest {
+
+    /* As generateEphemerisTable writes it: hourly for 30 years from 2018. */
+    private static final long START_SECONDS = 1514764800L;
+    private static final int STEP_SECONDS = 3600;
+    private static final int SAMPLES = (int) (30 * 365.25 * 24) + 1;
+
+    /** Half a 16-bit unit of rounding, plus float interpolation error. */
+    private static final double MAX_ERROR_DEGREES = 0.005;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static EphemerisTable table;
+
+    @BeforeClass
+    public static void writeTable() throws IOException {
+        File file = folder.newFile(EphemerisTable.ASSET_NAME);
+        EphemerisTable.write(file, START_SECONDS, STEP_SECONDS, SAMPLES);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            table = new EphemerisTable(mapped);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static double angleBetween(double a, double b) {
+        double d = Math.abs(a - b) % 360;
+        return Math.min(d, 360 - d);
+    }
+
+    @Test
+    public void coversThirtyYearsFrom2018() {
+        long start = START_SECONDS * 1000L;
+        long end = start + (SAMPLES - 1) * STEP_SECONDS * 1000L;
+        assertFalse(table.covers(start - 1));
+        assertTrue(table.covers(start));
+        assertTrue(table.covers(end - 1));
+        assertFalse(table.covers(end));
+    }
+
+    @Test
+    public void interpolationStaysCloseToGenerator() {
+        long start = START_SECONDS * 1000L;
+        long span = (SAMPLES - 1) * STEP_SECONDS * 1000L;
+        Random random = new Random(1);
+        float[] out = new float[Ephemeris.BODY_COUNT];
+        double worst = 0;
+        for (int n = 0; n < 200000; n++) {
+            long millis = start + (long) (random.nextDouble() * span);
+            table.bodyRotations(millis, out);
+            for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+                assertTrue(out[body] >= 0 && out[body] < 360);
+                worst = Math.max(worst, angleBetween(out[body], Ephemeris.rotation(body, millis)));
+            }
+        }
+        System.out.println("EphemerisTable worst error: " + worst + " degrees");
+        assertTrue("worst error " + worst, worst < MAX_ERROR_DEGREES);
+    }
+
+    @Test
+    public void exactAtSamples() {
+        float[] out = new float[Ephemeris.BODY_COUNT];
+        for (int s = 0; s < SAMPLES - 1; s += 997) {
+            long millis = (START_SECONDS + (long) s * STEP_SECONDS) * 1000L;
+            table.bodyRotations(millis, out);
+            for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+                assertEquals(0, angleBetween(out[body], Ephemeris.rotation(body, millis)),
+                        360.0 / 65536 / 2 + 1e-4);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+        new EphemerisTable(ByteBuffer.allocate(64));
+    }
+}
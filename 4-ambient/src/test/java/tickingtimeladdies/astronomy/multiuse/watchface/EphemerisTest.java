@@ -0,0 +1,111 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EphemerisTest {
+
+    private static final double EPSILON = 1e-6;
+
+    /** Period of each hand in seconds, as the face originally wrote them out. */
+    private static final double[] PERIOD_SECONDS = {
+            5067010.0, 10087200.0, 88775.22, 35733.312, 38517.12, 62035.2, 57974.4, 551880.0,
+            2551442.87
+    };
+
+    /** The angles as onDraw originally computed them, in double rather than float seconds. */
+    private static double reference(int body, double utcSeconds) {
+        double period = PERIOD_SECONDS[body];
+        double degrees;
+        if (body == Ephemeris.MOON) {
+            degrees = 360 * (utcSeconds % period) / period - 84.425;
+        } else {
+            degrees = (24 * (utcSeconds % period) / period) % 12 * 30;
+            if (body == Ephemeris.MARS) {
+                degrees -= 150.3356;
+            }
+        }
+        return ((degrees % 360) + 360) % 360;
+    }
+
+    /** Difference of two angles folded into [0, 180]. */
+    private static double angleBetween(double a, double b) {
+        double d = Math.abs(a - b) % 360;
+        return Math.min(d, 360 - d);
+    }
+
+    @Test
+    public void phasesAtEpoch() {
+        assertEquals(0, Ephemeris.rotation(Ephemeris.MERCURY, 0), EPSILON);
+        assertEquals(209.6644, Ephemeris.rotation(Ephemeris.MARS, 0), EPSILON);
+        assertEquals(275.575, Ephemeris.rotation(Ephemeris.MOON, 0), EPSILON);
+    }
+
+    @Test
+    public void planetsSweepTheDialTwicePerPeriod() {
+        long quarter = Math.round(35733.312 * 1000 / 4);
+        assertEquals(180, Ephemeris.rotation(Ephemeris.JUPITER, quarter), 1e-3);
+        long half = Math.round(35733.312 * 1000 / 2);
+        assertEquals(0, angleBetween(0, Ephemeris.rotation(Ephemeris.JUPITER, half)), 1e-3);
+    }
+
+    @Test
+    public void matchesOriginalFormulas() {
+        long[] instants = {
+                0L, 1L, 86399999L, 1514764800000L, 1539734400123L, 1791936000000L, 2461449600000L
+        };
+        for (long millis : instants) {
+            for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+                double expected = reference(body, millis / 1000.0);
+                double actual = Ephemeris.rotation(body, millis);
+                assertEquals("body " + body + " at " + millis,
+                        0, angleBetween(expected, actual), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void rotationsAreNormalised() {
+        float[] out = new float[Ephemeris.BODY_COUNT];
+        for (long millis = 1514764800000L; millis < 1514764800000L + 100L * 86400000L;
+                millis += 3600000L + 12345L) {
+            Ephemeris.bodyRotations(millis, out);
+            for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+                assertTrue(out[body] >= 0 && out[body] <= 360);
+            }
+        }
+    }
+
+    @Test
+    public void degreesPerMilliMatchesRotation() {
+        long t = 1539734400000L;
+        long step = 1000;
+        for (int body = 0; body < Ephemeris.BODY_COUNT; body++) {
+            double moved = Ephemeris.rotation(body, t + step) - Ephemeris.rotation(body, t);
+            if (moved < 0) {
+                moved += 360;
+            }
+            assertEquals(Ephemeris.degreesPerMilli(body) * step, moved, 1e-6);
+        }
+    }
+
+    @Test
+    public void bodyRotationsFitsInAFrame() {
+        final float[] out = new float[Ephemeris.BODY_COUNT];
+        double nanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                long t = 1539734400000L;
+                double sum = 0;
+                for (int i = 0; i < ops; i++) {
+                    Ephemeris.bodyRotations(t + i * 16L, out);
+                    sum += out[Ephemeris.MOON];
+                }
+                return sum;
+            }
+        }.nanosPerOp("Ephemeris.bodyRotations", 200000);
+        assertTrue(nanos < Benchmark.FRAME_BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,139 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Drives the governor from a fake 60 Hz vsync clock. */
+public class FrameRateGovernorTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long VSYNC = SECOND / 60;
+
+    private FrameRateGovernor governor;
+    private long now;
+
+    @Before
+    public void setUp() {
+        governor = new FrameRateGovernor();
+        now = 5 * SECOND;
+    }
+
+    /**
+     * Feeds {@code seconds} of vsyncs, recording a draw of {@code drawNanos} for each frame the
+     * governor asks for, and returns how many frames were drawn in the last second. Stops early
+     * if the governor falls back, as the engine's vsync loop does.
+     */
+    private int run(int seconds, long drawNanos) {
+        return run(seconds, drawNanos, 1);
+    }
+
+    /** As {@link #run(int, long)}, but only every {@code every}th vsync arrives. */
+    private int run(int seconds, long drawNanos, int every) {
+        int drawnInLastSecond = 0;
+        long end = now + seconds * SECOND;
+        while (now < end && !governor.isFallenBack()) {
+            now += every * VSYNC;
+            if (governor.onVsync(now)) {
+                governor.recordDraw(drawNanos);
+                if (now > end - SECOND) {
+                    drawnInLastSecond++;
+                }
+            }
+        }
+        return drawnInLastSecond;
+    }
+
+    @Test
+    public void drawsEveryVsyncAtFullBattery() {
+        governor.setBattery(100, false);
+        assertEquals(60, governor.getRate());
+        assertEquals(60, run(5, SECOND / 1000), 1);
+        assertEquals(0, governor.getMissedFrames());
+    }
+
+    @Test
+    public void batteryCapsTheCadence() {
+        governor.setBattery(40, false);
+        assertEquals(30, governor.getRate());
+        assertEquals(30, run(5, SECOND / 1000), 1);
+
+        governor.setBattery(20, false);
+        assertEquals(15, governor.getRate());
+        assertEquals(15, run(5, SECOND / 1000), 1);
+
+        governor.setBattery(10, false);
+        assertTrue(governor.isFallenBack());
+        assertEquals(0, run(2, SECOND / 1000));
+    }
+
+    @Test
+    public void chargingLiftsTheBatteryCap() {
+        governor.setBattery(10, true);
+        assertEquals(60, governor.getRate());
+    }
+
+    @Test
+    public void slowDrawsStepDown() {
+        governor.setBattery(100, false);
+        // 12 ms is over half of a 60 fps frame but comfortably under half of a 30 fps one.
+        run(3, 12 * SECOND / 1000);
+        assertEquals(30, governor.getRate());
+        assertEquals(30, run(5, 12 * SECOND / 1000), 1);
+    }
+
+    @Test
+    public void missedVsyncsStepDown() {
+        governor.setBattery(100, false);
+        run(1, SECOND / 1000);
+        // Only every third vsync arrives: 40 missed a second.
+        run(2, SECOND / 1000, 3);
+        assertTrue(governor.getRate() < 60);
+        assertTrue(governor.getMissedFrames() >= 40);
+    }
+
+    @Test
+    public void fastDrawsStepBackUp() {
+        governor.setBattery(100, false);
+        run(3, 12 * SECOND / 1000);
+        assertEquals(30, governor.getRate());
+        // A few windows of cheap frames before it tries 60 again.
+        run(2, SECOND / 1000);
+        assertEquals(30, governor.getRate());
+        run(10, SECOND / 1000);
+        assertEquals(60, governor.getRate());
+        assertEquals(60, run(1, SECOND / 1000), 1);
+    }
+
+    @Test
+    public void neverStepsUpPastTheBatteryCap() {
+        governor.setBattery(40, false);
+        run(10, SECOND / 1000);
+        assertEquals(30, governor.getRate());
+    }
+
+    @Test
+    public void fallsBackAndRetriesAfterThirtySeconds() {
+        governor.setBattery(100, false);
+        // Draws this slow can't hold any vsync rate.
+        run(5, 200 * SECOND / 1000);
+        assertTrue(governor.isFallenBack());
+        assertEquals(1, governor.getRate());
+        long fellBack = now;
+
+        assertFalse(governor.mayResume(fellBack + 29 * SECOND));
+        assertTrue(governor.mayResume(fellBack + 31 * SECOND));
+        assertEquals(15, governor.getRate());
+        assertFalse(governor.isFallenBack());
+    }
+
+    @Test
+    public void staysFallenBackOnLowBattery() {
+        governor.setBattery(10, false);
+        assertFalse(governor.mayResume(now + 60 * SECOND));
+        assertTrue(governor.isFallenBack());
+    }
+}
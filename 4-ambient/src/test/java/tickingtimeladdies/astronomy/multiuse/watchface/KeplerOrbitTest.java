@@ -0,0 +1,79 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KeplerOrbitTest {
+
+    private static final double EPOCH_DAYS = 10956.0;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    /** Equation of center solved cold by bisection, to compare the warm-started solver with. */
+    private static double reference(double meanAnomalyAtEpoch, double meanMotion, double e,
+            long epochMillis) {
+        double days = epochMillis / MILLIS_PER_DAY - EPOCH_DAYS;
+        double mean = Math.toRadians(meanAnomalyAtEpoch + meanMotion * days);
+        mean -= 2 * Math.PI * Math.floor(mean / (2 * Math.PI));
+        // E - e sin E rises monotonically from 0 to 2 pi.
+        double lo = 0;
+        double hi = 2 * Math.PI;
+        for (int i = 0; i < 100; i++) {
+            double mid = (lo + hi) / 2;
+            if (mid - e * Math.sin(mid) < mean) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        double ecc = (lo + hi) / 2;
+        double trueAnomaly = 2 * Math.atan2(Math.sqrt(1 + e) * Math.sin(ecc / 2),
+                Math.sqrt(1 - e) * Math.cos(ecc / 2));
+        double center = trueAnomaly - mean;
+        center -= 2 * Math.PI * Math.floor(center / (2 * Math.PI) + 0.5);
+        return Math.toDegrees(center);
+    }
+
+    @Test
+    public void earthEquationOfCenterPeaksNearTwoDegrees() {
+        KeplerOrbit sun = new KeplerOrbit(356.0470, 0.9856002585, 0.016709);
+        long start = 1514764800000L;
+        double max = 0;
+        for (int day = 0; day < 366; day++) {
+            max = Math.max(max, Math.abs(sun.equationOfCenter(start + day * 86400000L)));
+        }
+        assertEquals(1.915, max, 0.002);
+    }
+
+    @Test
+    public void warmSolverMatchesColdReference() {
+        // Pluto is the most eccentric orbit the model uses.
+        double[][] elements = {
+                {356.0470, 0.9856002585, 0.016709},
+                {115.3654, 13.0649929509, 0.054900},
+                {18.6021, 0.5240207766, 0.093405},
+                {14.882, 0.003964, 0.2488}
+        };
+        for (double[] el : elements) {
+            KeplerOrbit orbit = new KeplerOrbit(el[0], el[1], el[2]);
+            for (long t = 1514764800000L; t < 1514764800000L + 400L * 86400000L; t += 60000L * 97) {
+                long before = orbit.getIterations();
+                double center = orbit.equationOfCenter(t);
+                assertTrue(orbit.getIterations() - before <= KeplerOrbit.MAX_ITERATIONS);
+                assertEquals("e=" + el[2] + " t=" + t, reference(el[0], el[1], el[2], t), center, 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void countsSolvesAndIterations() {
+        KeplerOrbit orbit = new KeplerOrbit(18.6021, 0.5240207766, 0.093405);
+        for (int i = 0; i < 10; i++) {
+            orbit.equationOfCenter(1514764800000L + i * 60000L);
+        }
+        assertEquals(10, orbit.getSolves());
+        assertTrue(orbit.getIterations() >= 10);
+        assertTrue(orbit.getIterations() <= 10 * KeplerOrbit.MAX_ITERATIONS);
+    }
+}
@@ -0,0 +1,66 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OrbitModelTest {
+
+    private static final long START = 1514764800000L;
+
+    @Test
+    public void cacheSolvesOncePerMinuteAtOneHertz() {
+        OrbitModel model = new OrbitModel();
+        float[] rotations = new float[Ephemeris.BODY_COUNT];
+        long days = 30;
+        long frames = days * 86400;
+        for (long i = 0; i < frames; i++) {
+            Ephemeris.bodyRotations(START + i * 1000L, rotations);
+            model.applyCorrections(START + i * 1000L, rotations);
+        }
+        long calls = model.getCacheHits() + model.getCacheMisses();
+        double hitRate = model.getCacheHits() / (double) calls;
+        double stepsPerSolve = model.getSolverIterations() / (double) model.getSolves();
+        System.out.println("OrbitModel: " + String.format("%.2f%%", 100 * hitRate)
+                + " cache hits, " + String.format("%.2f", stepsPerSolve) + " Newton steps/solve");
+
+        assertEquals(frames, calls);
+        assertEquals(days * 24 * 60, model.getCacheMisses());
+        assertTrue(hitRate >= 0.98);
+        assertTrue(stepsPerSolve >= 1);
+        assertTrue(stepsPerSolve <= 2);
+    }
+
+    @Test
+    public void correctionsAreStableWithinAMinute() {
+        OrbitModel model = new OrbitModel();
+        float[] a = new float[Ephemeris.BODY_COUNT];
+        float[] b = new float[Ephemeris.BODY_COUNT];
+        model.applyCorrections(START, a);
+        model.applyCorrections(START + 59999, b);
+        for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+            assertEquals(a[i], b[i], 0f);
+            assertTrue(a[i] >= 0 && a[i] < 360);
+        }
+        // Mercury's hand is on its sidereal rotation and takes no correction.
+        assertEquals(0f, a[Ephemeris.MERCURY], 0f);
+    }
+
+    @Test
+    public void correctionsStayWithinEquationOfCenter() {
+        OrbitModel model = new OrbitModel();
+        float[] rotations = new float[Ephemeris.BODY_COUNT];
+        for (long t = START; t < START + 4000L * 86400000L; t += 86400000L) {
+            for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+                rotations[i] = 0;
+            }
+            model.applyCorrections(t, rotations);
+            for (int i = 0; i < Ephemeris.BODY_COUNT; i++) {
+                float correction = rotations[i] > 180 ? rotations[i] - 360 : rotations[i];
+                // Largest is Pluto: 2 hand degrees per degree of its ~29 degree equation of center.
+                assertTrue("body " + i + ": " + correction, Math.abs(correction) < 60);
+            }
+        }
+    }
+}
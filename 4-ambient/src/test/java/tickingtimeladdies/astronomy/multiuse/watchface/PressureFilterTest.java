@@ -0,0 +1,123 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PressureFilterTest {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long START = 1539734400000L;
+
+    @Test
+    public void firstReadingSetsTheLevel() {
+        PressureFilter filter = new PressureFilter();
+        assertFalse(filter.hasEstimate());
+        filter.update(1009.5f, START);
+        assertTrue(filter.hasEstimate());
+        assertEquals(1009.5f, filter.getLevel(), 0f);
+        assertEquals(0f, filter.getRatePerHour(), 0f);
+    }
+
+    @Test
+    public void steadyPressureHasNoRate() {
+        PressureFilter filter = new PressureFilter();
+        Random random = new Random(3);
+        for (long t = START; t < START + 12 * HOUR; t += MINUTE) {
+            filter.update(1013f + (float) random.nextGaussian() * 0.1f, t);
+        }
+        assertEquals(1013f, filter.getLevel(), 0.1f);
+        assertEquals(0f, filter.getRatePerHour(), 0.15f);
+    }
+
+    @Test
+    public void tracksAFallingFrontBetterThanTwoSamples() {
+        PressureFilter filter = new PressureFilter();
+        Random random = new Random(7);
+        double filterError = 0;
+        double naiveError = 0;
+        int scored = 0;
+        float previous = Float.NaN;
+        long t = START;
+        for (int i = 0; i < 24 * 60; i++, t += MINUTE) {
+            double truth = i < 12 * 60 ? 1013 : 1013 - (i - 12 * 60) / 60.0;
+            double trueRate = i < 12 * 60 ? 0 : -1;
+            float reading = (float) (truth + random.nextGaussian() * 0.1
+                    + (random.nextInt(200) == 0 ? 1 : 0));
+            filter.update(reading, t);
+            // Score once the filter has had a few hours of the front.
+            if (i >= 15 * 60) {
+                filterError += Math.abs(filter.getRatePerHour() - trueRate);
+                naiveError += Math.abs((reading - previous) * 60 - trueRate);
+                scored++;
+            }
+            previous = reading;
+        }
+        filterError /= scored;
+        naiveError /= scored;
+        System.out.println("PressureFilter: mean rate error " + String.format("%.3f", filterError)
+                + " mbar/h, single-sample difference " + String.format("%.3f", naiveError));
+        assertEquals(-1f, filter.getRatePerHour(), 0.25f);
+        assertTrue(filterError < 0.25);
+        assertTrue(filterError < naiveError);
+    }
+
+    @Test
+    public void longGapStartsAfresh() {
+        PressureFilter filter = new PressureFilter();
+        for (int i = 0; i < 120; i++) {
+            filter.update(1013f - i * 0.02f, START + i * MINUTE);
+        }
+        assertTrue(filter.getRatePerHour() < -0.5f);
+        long later = START + 120 * MINUTE + PressureFilter.RESET_GAP_MS + 1;
+        filter.update(1001f, later);
+        assertEquals(1001f, filter.getLevel(), 0f);
+        assertEquals(0f, filter.getRatePerHour(), 0f);
+    }
+
+    @Test
+    public void outOfOrderReadingIsFoldedInWithoutPrediction() {
+        PressureFilter filter = new PressureFilter();
+        filter.update(1013f, START);
+        filter.update(1013f, START + MINUTE);
+        filter.update(1013.1f, START + MINUTE / 2);
+        assertTrue(filter.getLevel() > 1012.9f && filter.getLevel() < 1013.2f);
+        assertEquals(3, filter.getUpdates());
+    }
+
+    @Test
+    public void clearForgetsTheEstimate() {
+        PressureFilter filter = new PressureFilter();
+        filter.update(1013f, START);
+        filter.clear();
+        assertFalse(filter.hasEstimate());
+    }
+
+    @Test
+    public void altitudeFromPressure() {
+        assertEquals(0, PressureFilter.altitudeMetres(1013.25f));
+        assertEquals(980, PressureFilter.altitudeMetres(900f));
+        assertTrue(PressureFilter.altitudeMetres(1030f) < 0);
+    }
+
+    @Test
+    public void updateCost() {
+        final PressureFilter filter = new PressureFilter();
+        double nanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                long t = START;
+                for (int i = 0; i < ops; i++) {
+                    filter.update(1013f + (i & 15) * 0.01f, t += MINUTE);
+                }
+                return filter.getRatePerHour();
+            }
+        }.nanosPerOp("PressureFilter.update", 1000000);
+        assertTrue(nanos < Benchmark.FRAME_BUDGET_NANOS);
+    }
+}
@@ -0,0 +1,145 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PressureLogTest {
+
+    private static final long START = 1539734400000L;
+    private static final long INTERVAL = PressureDecimator.SAMPLE_INTERVAL_MS;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /* Collects restored samples. */
+    private static final class Samples implements PressureLog.Sink {
+        final List<Float> values = new ArrayList<Float>();
+        final List<Long> times = new ArrayList<Long>();
+
+        @Override
+        public void add(float millibar, long timeMillis) {
+            values.add(millibar);
+            times.add(timeMillis);
+        }
+    }
+
+    private static float reading(int i) {
+        return 1000f + i * 0.25f;
+    }
+
+    private File logFile() {
+        return new File(folder.getRoot(), PressureLog.FILE_NAME);
+    }
+
+    private PressureLog logWith(int count, int maxRecords) throws IOException {
+        PressureLog log = new PressureLog(logFile(), maxRecords, START);
+        for (int i = 0; i < count; i++) {
+            log.append(reading(i), START + i * INTERVAL);
+        }
+        return log;
+    }
+
+    @Test
+    public void restoresAppendedSamplesAcrossReopen() throws IOException {
+        logWith(5, 100).close();
+
+        PressureLog log = new PressureLog(logFile(), 100, START + 10 * 3600000L);
+        Samples samples = new Samples();
+        assertEquals(5, log.restore(samples, START));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(reading(i), samples.values.get(i), 0.005f);
+            assertEquals(START + i * INTERVAL, (long) samples.times.get(i));
+        }
+        log.close();
+    }
+
+    @Test
+    public void restoresOnlySamplesSinceTheCutoff() throws IOException {
+        PressureLog log = logWith(10, 100);
+        Samples samples = new Samples();
+        assertEquals(4, log.restore(samples, START + 6 * INTERVAL));
+        assertEquals(START + 6 * INTERVAL, (long) samples.times.get(0));
+        assertEquals(START + 9 * INTERVAL, (long) samples.times.get(3));
+        log.close();
+    }
+
+    @Test
+    public void dropsATornTailRecord() throws IOException {
+        logWith(3, 100).close();
+        RandomAccessFile raf = new RandomAccessFile(logFile(), "rw");
+        // Half a record, as a crash mid-append would leave.
+        raf.seek(raf.length());
+        raf.write(new byte[] {1, 2, 3});
+        raf.close();
+
+        PressureLog log = new PressureLog(logFile(), 100, START);
+        assertEquals(3, log.size());
+        log.append(reading(3), START + 3 * INTERVAL);
+        Samples samples = new Samples();
+        assertEquals(4, log.restore(samples, START));
+        assertEquals(reading(3), samples.values.get(3), 0.005f);
+        assertEquals(START + 3 * INTERVAL, (long) samples.times.get(3));
+        log.close();
+    }
+
+    @Test
+    public void replacesAnUnreadableFile() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(logFile(), "rw");
+        raf.write(new byte[64]);
+        raf.close();
+
+        PressureLog log = new PressureLog(logFile(), 100, START);
+        assertEquals(0, log.size());
+        assertEquals(16, log.getBytes());
+        log.close();
+    }
+
+    @Test
+    public void compactionKeepsExactlyTheNewestRecords() throws IOException {
+        // The ninth append finds the log full and compacts it to the newest four first.
+        PressureLog log = logWith(9, 8);
+        assertEquals(5, log.size());
+        log.close();
+
+        log = new PressureLog(logFile(), 8, START);
+        Samples samples = new Samples();
+        assertEquals(5, log.restore(samples, 0));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(reading(4 + i), samples.values.get(i), 0.005f);
+            assertEquals(START + (4 + i) * INTERVAL, (long) samples.times.get(i));
+        }
+        assertEquals(16 + 5 * 8, logFile().length());
+        // Renamed into place, not left beside it.
+        assertFalse(new File(logFile().getPath() + ".tmp").exists());
+        log.close();
+    }
+
+    @Test
+    public void compactionOfATruncatedLogFailsWithoutReplacingIt() throws IOException {
+        PressureLog log = logWith(8, 8);
+        // Something else cuts the file short behind the log's back.
+        RandomAccessFile raf = new RandomAccessFile(logFile(), "rw");
+        raf.setLength(16 + 6 * 8);
+        raf.close();
+        try {
+            log.append(reading(8), START + 8 * INTERVAL);
+            fail("compacted a short log");
+        } catch (EOFException expected) {
+            // Reading the newest half ran off the end of the file.
+        }
+        log.close();
+        assertEquals(16 + 6 * 8, logFile().length());
+    }
+}
@@ -0,0 +1,70 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PressureTrendTest {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long START = 1539734400000L;
+    private static final long INTERVAL = PressureDecimator.SAMPLE_INTERVAL_MS;
+
+    @Test
+    public void trendSpansTheHistory() {
+        PressureTrend trend = new PressureTrend(PressureTrend.HISTORY_SIZE, INTERVAL);
+        assertEquals(6f, trend.getTrendHours(), 0f);
+        assertFalse(trend.hasEstimate());
+    }
+
+    @Test
+    public void intakeKeepsOneReadingPerInterval() {
+        PressureIntake intake = new PressureIntake(INTERVAL);
+        int kept = 0;
+        for (long t = START; t < START + HOUR; t += 30000L) {
+            if (intake.add(1013f, t)) {
+                kept++;
+            }
+        }
+        assertEquals(HOUR / INTERVAL, kept);
+        assertEquals(0f, intake.getTiers().change(START, START + HOUR), 0f);
+    }
+
+    @Test
+    public void drainMatchesFeedingTheKeptSamplesDirectly() {
+        PressureIntake intake = new PressureIntake(INTERVAL);
+        PressureTrend drained = new PressureTrend(PressureTrend.HISTORY_SIZE, INTERVAL);
+        PressureTrend direct = new PressureTrend(PressureTrend.HISTORY_SIZE, INTERVAL);
+        int total = 0;
+        // A falling front, drained in bursts as the engine would be after a batch.
+        for (long t = START; t < START + 12 * HOUR; t += 30000L) {
+            float millibar = 1013f - (t - START) / (float) HOUR;
+            if (intake.add(millibar, t)) {
+                direct.add(millibar, t);
+            }
+            if ((t - START) % HOUR == 0) {
+                total += drained.drain(intake);
+            }
+        }
+        total += drained.drain(intake);
+        assertEquals(12 * HOUR / INTERVAL, total);
+        assertEquals(direct.getArcDegrees(), drained.getArcDegrees(), 0f);
+        assertEquals(direct.getAltitudeMetres(), drained.getAltitudeMetres());
+        assertEquals(direct.getHistory().newestTime(), drained.getHistory().newestTime());
+        // Falling a millibar an hour shows as 4 degrees per millibar over six hours.
+        assertEquals(-24f, drained.getArcDegrees(), 1f);
+    }
+
+    @Test
+    public void arcIsClampedToHalfTheDial() {
+        PressureTrend trend = new PressureTrend(PressureTrend.HISTORY_SIZE, INTERVAL);
+        for (long t = START; t < START + 12 * HOUR; t += INTERVAL) {
+            trend.add(1013f + 20f * (t - START) / HOUR, t);
+        }
+        assertTrue(trend.hasEstimate());
+        assertEquals(180f, trend.getArcDegrees(), 0f);
+    }
+}
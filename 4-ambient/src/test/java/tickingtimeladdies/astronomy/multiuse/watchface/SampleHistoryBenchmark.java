@@ -0,0 +1,88 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+
+/**
+ * SampleHistory against the LinkedList of boxed floats it replaced, at the face's 60 sample
+ * capacity. The list only appends and evicts; SampleHistory also keeps every statistic current.
+ */
+public class SampleHistoryBenchmark {
+
+    private static final int CAPACITY = 60;
+    private static final int OPS = 1000000;
+
+    @Test
+    public void insertCost() {
+        final SampleHistory history = new SampleHistory(CAPACITY);
+        double historyNanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                long t = 0;
+                for (int i = 0; i < ops; i++) {
+                    history.add(1000f + (i & 31), t += 60000);
+                }
+                return history.mean() + history.min() + history.max() + history.slopePerHour();
+            }
+        }.nanosPerOp("SampleHistory.add + statistics", OPS);
+
+        final LinkedList<Float> list = new LinkedList<Float>();
+        double listNanos = new Benchmark() {
+            @Override
+            protected double run(int ops) {
+                for (int i = 0; i < ops; i++) {
+                    list.add(1000f + (i & 31));
+                    if (list.size() > CAPACITY) {
+                        list.poll();
+                    }
+                }
+                return list.getLast();
+            }
+        }.nanosPerOp("LinkedList<Float> add + poll", OPS);
+
+        // The host JIT can elide the list's boxing, so only guard against a gross regression.
+        assertTrue(historyNanos < Benchmark.FRAME_BUDGET_NANOS);
+        assertTrue(historyNanos < 10 * listNanos);
+    }
+
+    @Test
+    public void insertAllocation() {
+        SampleHistory history = new SampleHistory(CAPACITY);
+        LinkedList<Float> list = new LinkedList<Float>();
+        for (int i = 0; i < OPS; i++) {
+            history.add(1000f + (i & 1023) / 7f, i * 60000L);
+            list.add(1000f + (i & 1023) / 7f);
+            if (list.size() > CAPACITY) {
+                list.poll();
+            }
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < OPS; i++) {
+            history.add(1000f + (i & 1023) / 7f, i * 60000L);
+        }
+        double historyBytes = (allocatedBytes() - before) / (double) OPS;
+
+        before = allocatedBytes();
+        for (int i = 0; i < OPS; i++) {
+            list.add(1000f + (i & 1023) / 7f);
+            if (list.size() > CAPACITY) {
+                list.poll();
+            }
+        }
+        double listBytes = (allocatedBytes() - before) / (double) OPS;
+
+        System.out.println("SampleHistory: " + String.format("%.2f", historyBytes)
+                + " bytes/insert, LinkedList<Float>: " + String.format("%.2f", listBytes));
+        assertTrue(historyBytes < 1);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,119 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SampleHistoryTest {
+
+    private static final double MILLIS_PER_HOUR = 3600000.0;
+
+    /** Checks every statistic against a brute-force pass over the retained samples. */
+    private static void assertMatchesBruteForce(SampleHistory history, float[] values,
+            long[] times, int end, int capacity) {
+        int start = Math.max(0, end - capacity);
+        int n = end - start;
+        assertEquals(n, history.size());
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        double sumV = 0;
+        double sumT = 0;
+        double sumTT = 0;
+        double sumTV = 0;
+        for (int i = start; i < end; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            double t = (times[i] - times[start]) / MILLIS_PER_HOUR;
+            sumV += values[i];
+            sumT += t;
+            sumTT += t * t;
+            sumTV += t * values[i];
+        }
+        assertEquals(min, history.min(), 0f);
+        assertEquals(max, history.max(), 0f);
+        assertEquals(sumV / n, history.mean(), 1e-3);
+        double slope = n < 2 ? 0 : (n * sumTV - sumT * sumV) / (n * sumTT - sumT * sumT);
+        assertEquals(slope, history.slopePerHour(), 1e-3);
+        assertEquals(values[end - 1], history.newest(), 0f);
+        assertEquals(values[start], history.oldest(), 0f);
+        assertEquals(times[end - 1], history.newestTime());
+        assertEquals(times[start], history.oldestTime());
+    }
+
+    @Test
+    public void matchesBruteForceOverManyEvictions() {
+        int capacity = 60;
+        int count = 100000;
+        Random random = new Random(42);
+        float[] values = new float[count];
+        long[] times = new long[count];
+        long t = 1539734400000L;
+        float pressure = 1013f;
+        SampleHistory history = new SampleHistory(capacity);
+        for (int i = 0; i < count; i++) {
+            t += 60000 + random.nextInt(1000);
+            pressure += (random.nextFloat() - 0.5f) * 0.4f;
+            values[i] = pressure;
+            times[i] = t;
+            history.add(pressure, t);
+            if (i % 97 == 0 || i < 2 * capacity) {
+                assertMatchesBruteForce(history, values, times, i + 1, capacity);
+            }
+        }
+    }
+
+    @Test
+    public void indexesBackFromNewest() {
+        SampleHistory history = new SampleHistory(3);
+        for (int i = 1; i <= 5; i++) {
+            history.add(i, i * 1000L);
+        }
+        assertEquals(5f, history.get(0), 0f);
+        assertEquals(4f, history.get(1), 0f);
+        assertEquals(3f, history.get(2), 0f);
+        assertEquals(3000L, history.getTime(2));
+    }
+
+    @Test
+    public void slopeOfALine() {
+        SampleHistory history = new SampleHistory(10);
+        for (int i = 0; i < 25; i++) {
+            history.add(1000f - 0.5f * i, i * 600000L);
+        }
+        // -0.5 every 10 minutes.
+        assertEquals(-3f, history.slopePerHour(), 1e-4f);
+    }
+
+    @Test
+    public void noSlopeWithoutSpread() {
+        SampleHistory history = new SampleHistory(4);
+        history.add(1f, 1000L);
+        assertEquals(0f, history.slopePerHour(), 0f);
+        history.add(2f, 1000L);
+        assertEquals(0f, history.slopePerHour(), 0f);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        SampleHistory history = new SampleHistory(4);
+        for (int i = 0; i < 6; i++) {
+            history.add(100f + i, i * 1000L);
+        }
+        history.clear();
+        assertTrue(history.isEmpty());
+        history.add(7f, 10000L);
+        history.add(3f, 11000L);
+        assertEquals(2, history.size());
+        assertEquals(3f, history.min(), 0f);
+        assertEquals(7f, history.max(), 0f);
+        assertEquals(5f, history.mean(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new SampleHistory(0);
+    }
+}
@@ -0,0 +1,147 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RoboSettings;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowSensorManager;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26, shadows = SensorHubTest.ShadowSystemSensorManager.class)
+public class SensorHubTest {
+
+    /** Tracks registrations made with a handler, which the stock shadow leaves to native code. */
+    @Implements(className = "android.hardware.SystemSensorManager")
+    public static class ShadowSystemSensorManager extends ShadowSensorManager {
+        static final List<SensorEventListener> listeners = new ArrayList<SensorEventListener>();
+
+        @Implementation
+        protected boolean registerListenerImpl(SensorEventListener listener, Sensor sensor,
+                int delayUs, Handler handler, int maxReportLatencyUs, int reservedFlags) {
+            listeners.add(listener);
+            return true;
+        }
+
+        @Implementation
+        protected void unregisterListenerImpl(SensorEventListener listener, Sensor sensor) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        @Implementation
+        public void unregisterListener(SensorEventListener listener) {
+            listeners.remove(listener);
+        }
+    }
+
+    private SensorManager sensorManager;
+    private SensorHub hub;
+    private SensorHub.Channel channel;
+    private Scheduler scheduler;
+
+    @Before
+    public void setUp() {
+        // Hub loopers share the test's scheduler, so the test decides when posted work runs.
+        RoboSettings.setUseGlobalScheduler(true);
+        ShadowSystemSensorManager.listeners.clear();
+        scheduler = RuntimeEnvironment.getMasterScheduler();
+        sensorManager = (SensorManager) RuntimeEnvironment.application
+                .getSystemService(Context.SENSOR_SERVICE);
+        Sensor sensor = Shadow.newInstanceOf(Sensor.class);
+        ReflectionHelpers.setField(sensor, "mType", Sensor.TYPE_AMBIENT_TEMPERATURE);
+        shadowOf(sensorManager).addSensor(Sensor.TYPE_AMBIENT_TEMPERATURE, sensor);
+        hub = new SensorHub(sensorManager, null);
+        channel = hub.addChannel(Sensor.TYPE_AMBIENT_TEMPERATURE,
+                new SensorHub.Policy(60000L, 4, 60000L), 8);
+        assertNotNull(channel);
+    }
+
+    @After
+    public void tearDown() {
+        RoboSettings.setUseGlobalScheduler(false);
+    }
+
+    @Test
+    public void readingQueuedBehindStopSwitchesOffCleanly() {
+        hub.start();
+        assertEquals(1, ShadowSystemSensorManager.listeners.size());
+        // Hold everything posted from here, so stop() returns with its cleanup still queued
+        // behind a reading that was already on its way.
+        scheduler.pause();
+        hub.stop();
+        channel.onPressure(21.5f, 0L);
+        assertEquals(1, channel.getSamples());
+
+        // Anything else still queued, or posted after the stop, finds the channel off.
+        channel.onPressure(22f, 0L);
+        channel.run();
+        hub.onWakeup();
+        assertEquals(1, channel.getSamples());
+        assertEquals(21.5f, channel.getHistory().newest(), 0f);
+        assertTrue(ShadowSystemSensorManager.listeners.isEmpty());
+    }
+
+    @Test
+    public void timeoutQueuedBehindStopSwitchesOffCleanly() {
+        hub.start();
+        scheduler.pause();
+        hub.stop();
+        channel.run();
+        assertTrue(ShadowSystemSensorManager.listeners.isEmpty());
+        channel.onPressure(21.5f, 0L);
+        assertEquals(0, channel.getSamples());
+    }
+
+    @Test
+    public void stopWhileSamplingSwitchesTheSensorOff() {
+        hub.start();
+        assertEquals(1, ShadowSystemSensorManager.listeners.size());
+        hub.stop();
+        assertTrue(ShadowSystemSensorManager.listeners.isEmpty());
+        channel.onPressure(21.5f, 0L);
+        assertEquals(0, channel.getSamples());
+    }
+
+    @Test
+    public void countsSamplesWithoutAListener() {
+        hub.start();
+        channel.onPressure(21.5f, 0L);
+        assertEquals(1, hub.getSamples());
+        hub.stop();
+    }
+
+    @Test
+    public void restartsAfterStop() {
+        hub.start();
+        hub.stop();
+        SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 60000L);
+        hub.start();
+        channel.onPressure(21.5f, 0L);
+        assertEquals(1, channel.getSamples());
+        hub.stop();
+    }
+}
@@ -0,0 +1,58 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TintedAtlasTest {
+
+    private static final int WHITE = 0xFFFFFF;
+
+    /* The carved mask, then the accent over it: {mask coverage left, total coverage}, 0..1. */
+    private static double[] composite(int m, int a) {
+        int[] mask = {m << 24 | WHITE};
+        int[] accent = {a << 24 | WHITE};
+        TintedAtlas.carve(mask, accent);
+        double carved = (mask[0] >>> 24) / 255.0;
+        double accentCoverage = a / 255.0;
+        double maskShowing = carved * (1 - accentCoverage);
+        return new double[] {maskShowing, maskShowing + accentCoverage};
+    }
+
+    @Test
+    public void accentOverCarvedMaskCoversExactlyTheMask() {
+        double worst = 0;
+        for (int m = 0; m <= 255; m++) {
+            for (int a = 1; a <= m; a++) {
+                double[] result = composite(m, a);
+                worst = Math.max(worst, Math.abs(result[1] - m / 255.0));
+                worst = Math.max(worst, Math.abs(result[0] - (m - a) / 255.0));
+            }
+        }
+        // Within rounding of the 8-bit mask.
+        assertTrue("worst " + worst * 255 + "/255", worst * 255 <= 0.5);
+    }
+
+    @Test
+    public void softAccentEdgeLeavesNoMaskUnderIt() {
+        // An anti-aliased accent edge at the edge of the shape: all of it is accent.
+        assertEquals(0, composite(128, 128)[0], 0);
+        assertEquals(128 / 255.0, composite(128, 128)[1], 0);
+    }
+
+    @Test
+    public void opaqueAccentRemovesTheMask() {
+        int[] mask = {0xFFFFFFFF};
+        TintedAtlas.carve(mask, new int[] {0xFFFFFFFF});
+        assertEquals(0, mask[0] >>> 24);
+    }
+
+    @Test
+    public void maskWithoutAccentIsUntouched() {
+        int[] mask = {0x80FFFFFF, 0xFFFFFFFF};
+        TintedAtlas.carve(mask, new int[] {0, 0x00FFFFFF});
+        assertEquals(0x80FFFFFF, mask[0]);
+        assertEquals(0xFFFFFFFF, mask[1]);
+    }
+}
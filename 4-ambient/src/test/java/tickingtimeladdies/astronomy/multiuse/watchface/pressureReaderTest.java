@@ -0,0 +1,141 @@
+package tickingtimeladdies.astronomy.multiuse.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class pressureReaderTest {
+
+    /* Readings are i and i * 1000 ns, so any mix of two readings is detectable. */
+    private static final int VALUES = 1 << 24;
+
+    @Test
+    public void nothingToReadAtFirst() {
+        pressureReader reader = new pressureReader();
+        pressureReader.Sample sample = new pressureReader.Sample();
+        assertFalse(reader.read(sample));
+        assertEquals(0, reader.getSequence());
+    }
+
+    @Test
+    public void publishesEachReading() {
+        pressureReader reader = new pressureReader();
+        pressureReader.Sample sample = new pressureReader.Sample();
+        reader.onReading(1013.25f, 5000L);
+        assertTrue(reader.read(sample));
+        assertEquals(1013.25f, sample.millibar, 0f);
+        assertEquals(5000L, sample.time);
+        int first = sample.sequence;
+        reader.onReading(1013.5f, 6000L);
+        assertTrue(reader.read(sample));
+        assertTrue(sample.sequence != first);
+        assertEquals(reader.getSequence(), sample.sequence);
+    }
+
+    /** Stands still until the test moves it. */
+    private static final class FakeClock implements pressureReader.Clock {
+        long nanos = TimeUnit.HOURS.toNanos(1);
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return nanos;
+        }
+    }
+
+    @Test
+    public void burstPublishesTrimmedMean() {
+        FakeClock clock = new FakeClock();
+        pressureReader reader = new pressureReader(clock);
+        final AtomicReference<Float> heard = new AtomicReference<Float>();
+        reader.setListener(new pressureReader.Listener() {
+            @Override
+            public void onPressure(float millibar, long timestampNanos) {
+                heard.set(millibar);
+            }
+        });
+        reader.startBurst(4, TimeUnit.SECONDS.toNanos(5));
+        reader.onReading(1000f, 1L);
+        reader.onReading(1010f, 2L);
+        reader.onReading(1012f, 3L);
+        assertEquals(null, heard.get());
+        assertEquals(0f, reader.getSensorOnMsPerSample(), 0f);
+        clock.nanos += TimeUnit.MILLISECONDS.toNanos(250);
+        // An outlier the trim drops.
+        reader.onReading(1100f, 4L);
+        assertEquals(1011f, heard.get(), 0f);
+        pressureReader.Sample sample = new pressureReader.Sample();
+        assertTrue(reader.read(sample));
+        assertEquals(1011f, sample.millibar, 0f);
+        assertEquals(250f, reader.getSensorOnMsPerSample(), 0f);
+
+        // A second burst, 150 ms on, averages with the first.
+        reader.startBurst(1, TimeUnit.SECONDS.toNanos(5));
+        clock.nanos += TimeUnit.MILLISECONDS.toNanos(150);
+        reader.onReading(1020f, 5L);
+        assertEquals(1020f, heard.get(), 0f);
+        assertEquals(200f, reader.getSensorOnMsPerSample(), 0f);
+    }
+
+    /**
+     * One writer publishing as fast as it can while several readers read: every reading seen
+     * must be one that was written whole.
+     */
+    @Test
+    public void readersNeverSeeATornReading() throws InterruptedException {
+        final pressureReader reader = new pressureReader();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong reads = new AtomicLong();
+        final AtomicReference<String> torn = new AtomicReference<String>();
+        int readerCount = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        final CountDownLatch finished = new CountDownLatch(readerCount);
+
+        for (int r = 0; r < readerCount; r++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    pressureReader.Sample sample = new pressureReader.Sample();
+                    long count = 0;
+                    int lastSequence = 0;
+                    while (!done.get()) {
+                        if (reader.read(sample)) {
+                            if (sample.time != (long) sample.millibar * 1000L
+                                    || (sample.sequence & 1) != 0
+                                    || sample.sequence - lastSequence < 0) {
+                                torn.compareAndSet(null, sample.millibar + " at " + sample.time
+                                        + ", sequence " + sample.sequence);
+                            }
+                            lastSequence = sample.sequence;
+                        }
+                        count++;
+                    }
+                    reads.addAndGet(count);
+                    finished.countDown();
+                }
+            }, "reader-" + r).start();
+        }
+
+        long writes = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 10000; i++) {
+                int v = (int) (writes++ % VALUES);
+                reader.onReading(v, v * 1000L);
+            }
+        }
+        done.set(true);
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+
+        System.out.println("pressureReader: " + writes + " writes, " + reads.get() + " reads by "
+                + readerCount + " readers");
+        assertEquals(null, torn.get());
+        assertTrue(reads.get() > 0);
+    }
+}